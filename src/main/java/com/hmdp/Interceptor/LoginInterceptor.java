@@ -1,24 +1,20 @@
 package com.hmdp.Interceptor;
 
 import com.hmdp.dto.UserDTO;
-import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.UserHolder;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.UvRecorder;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 
 // 登录校验拦截器
 public class LoginInterceptor implements HandlerInterceptor {
 
-    StringRedisTemplate stringRedisTemplate;
+    UvRecorder uvRecorder;
 
-    public LoginInterceptor(StringRedisTemplate srt) {
-        stringRedisTemplate = srt;
+    public LoginInterceptor(UvRecorder uvRecorder) {
+        this.uvRecorder = uvRecorder;
     }
 
     @Override
@@ -29,11 +25,8 @@ public class LoginInterceptor implements HandlerInterceptor {
             // 拦截
             return false;
         }
-        LocalDate now = LocalDate.now();
-        String keySuffix = now.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        String key = RedisConstants.UV_KEY + keySuffix;
-        // UV统计
-        stringRedisTemplate.opsForHyperLogLog().add(key, String.valueOf(user.getId()));
+        // UV统计：本地去重后异步批量写入 Redis
+        uvRecorder.record(user.getId());
         return true;
     }
 }
@@ -1,26 +1,19 @@
 package com.hmdp.Interceptor;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
-import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.TokenManager;
 import com.hmdp.utils.UserHolder;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 
 // token 刷新拦截器
-public class RefreshTokenInterceptor implements HandlerInterceptor {
-    StringRedisTemplate stringRedisTemplate;
+public class RefreshTokenInterceptor implements AsyncHandlerInterceptor {
+    TokenManager tokenManager;
 
-    public RefreshTokenInterceptor(StringRedisTemplate srt) {
-        this.stringRedisTemplate = srt;
+    public RefreshTokenInterceptor(TokenManager tokenManager) {
+        this.tokenManager = tokenManager;
     }
 
     @Override
@@ -32,21 +25,27 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             // 没有token，放行
             return true;
         }
-        // redis取出用户信息
-        String key  = LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
-        if (userMap.isEmpty()) {
+        // 解析token
+        TokenManager.Session session = tokenManager.resolve(token);
+        if (session == null) {
             // 过期 或 假token，放行
             return true;
         }
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
         // 保存到ThreadLocal
-        UserHolder.saveUser(userDTO);
-        // 刷新token TTL
-        stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        UserHolder.saveUser(session.getUser());
+        // 签名 token 滑动续期，新 token 通过响应头返回
+        if (session.getRenewedToken() != null) {
+            res.setHeader("authorization", session.getRenewedToken());
+        }
         return true;
     }
 
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // 异步请求（如返回 Mono）不会在当前线程执行 afterCompletion，这里移除用户，避免线程复用时串号
+        UserHolder.removeUser();
+    }
+
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         // 移除用户
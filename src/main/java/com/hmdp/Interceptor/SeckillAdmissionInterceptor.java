@@ -0,0 +1,56 @@
+package com.hmdp.Interceptor;
+
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.utils.SeckillAdmission;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// 秒杀准入拦截器：在解析 token 之前执行，被拒绝的请求直接返回 429
+public class SeckillAdmissionInterceptor implements HandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = SeckillAdmissionInterceptor.class.getName() + ".start";
+    private static final byte[] SHED_BODY = JSONUtil.toJsonStr(Result.fail("抢购人数过多，请稍后再试！"))
+            .getBytes(StandardCharsets.UTF_8);
+
+    SeckillAdmission seckillAdmission;
+
+    public SeckillAdmissionInterceptor(SeckillAdmission seckillAdmission) {
+        this.seckillAdmission = seckillAdmission;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest req, HttpServletResponse res, Object handler) throws Exception {
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) req.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String id = variables == null ? null : variables.get("id");
+        if (!NumberUtil.isLong(id)) {
+            // 交给后续处理返回参数错误
+            return true;
+        }
+        if (seckillAdmission.tryAdmit(Long.valueOf(id)) != SeckillAdmission.Decision.ADMITTED) {
+            res.setStatus(429);
+            res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            res.getOutputStream().write(SHED_BODY);
+            return false;
+        }
+        req.setAttribute(START_ATTRIBUTE, System.currentTimeMillis());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest req, HttpServletResponse res, Object handler, Exception ex) throws Exception {
+        // 只有放行的请求记录了开始时间，需要归还并发名额
+        Object start = req.getAttribute(START_ATTRIBUTE);
+        if (start != null) {
+            seckillAdmission.release(System.currentTimeMillis() - (Long) start);
+        }
+    }
+}
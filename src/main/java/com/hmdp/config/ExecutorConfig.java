@@ -0,0 +1,56 @@
+package com.hmdp.config;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 业务线程池统一配置，线程数可通过配置文件调整
+ * - 队列有界，队列满时由调用线程执行，避免任务堆积或被丢弃
+ */
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * 缓存重建线程池（逻辑过期重建）
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService cacheRebuildExecutor(
+            @Value("${hmdp.executor.cache-rebuild-threads:10}") int threads) {
+        return newExecutor("cache-rebuild-", threads, 1000);
+    }
+
+    /**
+     * 店铺详情等聚合查询的并行 I/O 线程池
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService queryExecutor(
+            @Value("${hmdp.executor.query-threads:32}") int threads) {
+        return newExecutor("query-", threads, 2000);
+    }
+
+    /**
+     * feed 推送线程池，发blog时异步推送到粉丝收件箱
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService feedPushExecutor(
+            @Value("${hmdp.executor.feed-push-threads:4}") int threads) {
+        return newExecutor("feed-push-", threads, 10000);
+    }
+
+    private ExecutorService newExecutor(String prefix, int threads, int queueSize) {
+        return new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueSize),
+                new NamedThreadFactory(prefix, false),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+}
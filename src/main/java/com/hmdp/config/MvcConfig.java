@@ -2,8 +2,11 @@ package com.hmdp.config;
 
 import com.hmdp.Interceptor.LoginInterceptor;
 import com.hmdp.Interceptor.RefreshTokenInterceptor;
+import com.hmdp.Interceptor.SeckillAdmissionInterceptor;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.TokenManager;
+import com.hmdp.utils.UvRecorder;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -12,18 +15,27 @@ import javax.annotation.Resource;
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
     @Resource
-    StringRedisTemplate stringRedisTemplate;
+    TokenManager tokenManager;
+    @Resource
+    UvRecorder uvRecorder;
+    @Resource
+    SeckillAdmission seckillAdmission;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        // 秒杀准入拦截器，最先执行，被拒绝的请求不再解析 token
+        registry
+                .addInterceptor(new SeckillAdmissionInterceptor(seckillAdmission))
+                .addPathPatterns("/voucher-order/seckill/**")
+                .order(-1);
         // token刷新拦截器
         registry
-                .addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate))
+                .addInterceptor(new RefreshTokenInterceptor(tokenManager))
                 .addPathPatterns("/**")
                 .order(0);
         // 登录校验拦截器
         registry
-                .addInterceptor(new LoginInterceptor(stringRedisTemplate))
+                .addInterceptor(new LoginInterceptor(uvRecorder))
                 // 登录校验排除路径
                 .excludePathPatterns(
                         "/swagger-resources/**", "/webjars/**", "/v2/**", "/swagger-ui.html/**",
@@ -31,6 +43,10 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/shop/**",
                         "/shop-type/**",
                         "/blog/hot",
+                        "/blog/hot/scroll",
+                        "/blog-comments/of/**",
+                        "/rx/shop/**",
+                        "/rx/blog/hot",
                         "/user/code",
                         "/user/login"
                 )
@@ -0,0 +1,54 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.ViewStatRecorder;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 商铺、blog 访问统计
+ * </p>
+ */
+@RestController
+@RequestMapping("/analytics")
+public class AnalyticsController {
+
+    @Resource
+    private ViewStatRecorder viewStatRecorder;
+
+    /**
+     * 查询时间范围内的 UV/PV
+     * @param type shop、blog
+     * @param id 商铺或blog的id
+     * @param granularity hour、day、month
+     * @param start 开始时间
+     * @param end 结束时间，默认当前时间
+     * @return
+     */
+    @GetMapping("/{type}/{id}")
+    public Result queryViewStats(
+            @PathVariable("type") String type,
+            @PathVariable("id") Long id,
+            @RequestParam(value = "granularity", defaultValue = "day") String granularity,
+            @RequestParam("start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam(value = "end", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+        if (!ViewStatRecorder.TYPE_SHOP.equals(type) && !ViewStatRecorder.TYPE_BLOG.equals(type)) {
+            return Result.fail("不支持的统计对象！");
+        }
+        if (!"hour".equals(granularity) && !"day".equals(granularity) && !"month".equals(granularity)) {
+            return Result.fail("不支持的统计粒度！");
+        }
+        if (end == null) {
+            end = LocalDateTime.now();
+        }
+        if (start.isAfter(end)) {
+            return Result.fail("开始时间不能晚于结束时间！");
+        }
+        return Result.ok(viewStatRecorder.query(type, id, granularity, start, end));
+    }
+}
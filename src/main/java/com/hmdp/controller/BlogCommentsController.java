@@ -1,9 +1,12 @@
 package com.hmdp.controller;
 
 
-import org.springframework.web.bind.annotation.RequestMapping;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.BlogComments;
+import com.hmdp.service.IBlogCommentsService;
+import org.springframework.web.bind.annotation.*;
 
-import org.springframework.web.bind.annotation.RestController;
+import javax.annotation.Resource;
 
 /**
  * <p>
@@ -17,4 +20,42 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/blog-comments")
 public class BlogCommentsController {
 
+    @Resource
+    private IBlogCommentsService blogCommentsService;
+
+    @PostMapping
+    public Result saveComment(@RequestBody BlogComments comment) {
+        return blogCommentsService.saveComment(comment);
+    }
+
+    @DeleteMapping("/{id}")
+    public Result deleteComment(@PathVariable("id") Long id) {
+        return blogCommentsService.deleteComment(id);
+    }
+
+    /**
+     * 笔记的一级评论，滚动分页
+     * @param blogId 笔记id
+     * @param lastId 上一页最后一条评论的id，第一页不传
+     * @return
+     */
+    @GetMapping("/of/blog")
+    public Result queryCommentsOfBlog(
+            @RequestParam("blogId") Long blogId,
+            @RequestParam(value = "lastId", required = false) Long lastId) {
+        return blogCommentsService.queryCommentsOfBlog(blogId, lastId);
+    }
+
+    /**
+     * 一级评论下的回复，滚动分页
+     * @param parentId 一级评论id
+     * @param lastId 上一页最后一条回复的id，第一页不传
+     * @return
+     */
+    @GetMapping("/of/reply")
+    public Result queryReplies(
+            @RequestParam("parentId") Long parentId,
+            @RequestParam(value = "lastId", required = false) Long lastId) {
+        return blogCommentsService.queryReplies(parentId, lastId);
+    }
 }
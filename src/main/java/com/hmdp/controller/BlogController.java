@@ -1,19 +1,16 @@
 package com.hmdp.controller;
 
 
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.User;
 import com.hmdp.service.IBlogService;
-import com.hmdp.service.IUserService;
-import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.ViewStatRecorder;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
 
 /**
  * <p>
@@ -30,6 +27,9 @@ public class BlogController {
     @Resource
     private IBlogService blogService;
 
+    @Resource
+    private ViewStatRecorder viewStatRecorder;
+
     @PostMapping
     public Result saveBlog(@RequestBody Blog blog) {
         return blogService.saveBlog(blog);
@@ -40,16 +40,19 @@ public class BlogController {
         return blogService.likeBlog(id);
     }
 
+    /**
+     * 查询我的blog，滚动分页
+     * @param max 上一页最后一条的创建时间戳，第一页不传
+     * @param lastId 上一页最后一条的id，第一页不传
+     * @return
+     */
     @GetMapping("/of/me")
-    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryMyBlog(
+            @RequestParam(value = "max", required = false) Long max,
+            @RequestParam(value = "lastId", required = false) Long lastId) {
         // 获取登录用户
         UserDTO user = UserHolder.getUser();
-        // 根据用户查询
-        Page<Blog> page = blogService.query()
-                .eq("user_id", user.getId()).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        return Result.ok(records);
+        return blogService.queryBlogOfUser(user.getId(), max, lastId);
     }
 
     @GetMapping("/hot")
@@ -57,8 +60,23 @@ public class BlogController {
         return blogService.queryHotBlog(current);
     }
 
+    /**
+     * 热门blog，按点赞数滚动分页
+     * @param max 上一页最小的点赞数，第一页不传
+     * @param offset 与上一页最小点赞数相同的条数
+     * @return
+     */
+    @GetMapping("/hot/scroll")
+    public Result queryHotBlogOfScroll(
+            @RequestParam(value = "max", required = false) Long max,
+            @RequestParam(value = "offset", defaultValue = "0") Integer offset) {
+        return blogService.queryHotBlogOfScroll(max, offset);
+    }
+
     @GetMapping("/{id}")
-    public Result queryBlogById(@PathVariable("id") Long id) {
+    public Result queryBlogById(@PathVariable("id") Long id, HttpServletRequest request) {
+        // 访问统计，只写本地缓冲区
+        viewStatRecorder.record(ViewStatRecorder.TYPE_BLOG, id, ViewStatRecorder.visitorOf(request));
         return blogService.queryBlogById(id);
     }
 
@@ -67,14 +85,19 @@ public class BlogController {
         return blogService.queryBlogLikes(id);
     }
 
+    /**
+     * 查询用户的blog，滚动分页
+     * @param id 用户id
+     * @param max 上一页最后一条的创建时间戳，第一页不传
+     * @param lastId 上一页最后一条的id，第一页不传
+     * @return
+     */
     @GetMapping("/of/user")
     public Result queryBlogByUserId(
-            @RequestParam(value = "current", defaultValue = "1") Integer current,
-            @RequestParam(value = "id") Long id) {
-        Page<Blog> blogPage = blogService.query().eq("user_id", id).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = blogPage.getRecords();
-        return Result.ok(records);
+            @RequestParam(value = "id") Long id,
+            @RequestParam(value = "max", required = false) Long max,
+            @RequestParam(value = "lastId", required = false) Long lastId) {
+        return blogService.queryBlogOfUser(id, max, lastId);
     }
 
     /**
@@ -0,0 +1,94 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.ReactiveCacheClient;
+import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.ViewStatRecorder;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+
+/**
+ * <p>
+ * 读多写少接口的响应式版本，与 ShopController、BlogController 并存
+ * - Redis 通过 ReactiveStringRedisTemplate 非阻塞访问
+ * - MySQL 仍是 JDBC 阻塞调用，放到 boundedElastic 线程执行，请求线程立即释放
+ * </p>
+ */
+@RestController
+@RequestMapping("/rx")
+public class ReactiveController {
+
+    @Resource
+    private ReactiveCacheClient reactiveCacheClient;
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private IBlogService blogService;
+    @Resource
+    private ViewStatRecorder viewStatRecorder;
+
+    @GetMapping("/shop/{id}")
+    public Mono<Result> queryShopById(@PathVariable("id") Long id, HttpServletRequest request) {
+        viewStatRecorder.record(ViewStatRecorder.TYPE_SHOP, id, ViewStatRecorder.visitorOf(request));
+        return reactiveCacheClient.queryWithPassThrough(
+                        CACHE_SHOP_KEY,
+                        id,
+                        Shop.class,
+                        shopService::getById,
+                        CACHE_SHOP_TTL,
+                        TimeUnit.MINUTES)
+                .map(Result::ok)
+                .defaultIfEmpty(Result.fail("商铺不存在"));
+    }
+
+    @GetMapping("/shop/of/type")
+    public Mono<Result> queryShopByType(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y
+    ) {
+        return blocking(() -> shopService.queryShopByType(typeId, current, x, y));
+    }
+
+    @GetMapping("/blog/hot")
+    public Mono<Result> queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+        return blocking(() -> blogService.queryHotBlog(current));
+    }
+
+    @GetMapping("/blog/{id}")
+    public Mono<Result> queryBlogById(@PathVariable("id") Long id, HttpServletRequest request) {
+        viewStatRecorder.record(ViewStatRecorder.TYPE_BLOG, id, ViewStatRecorder.visitorOf(request));
+        return blocking(() -> blogService.queryBlogById(id));
+    }
+
+    /**
+     * 在 boundedElastic 线程执行阻塞的业务调用
+     * - 当前登录用户保存在请求线程的 ThreadLocal 中，需要带到执行线程
+     */
+    private Mono<Result> blocking(Supplier<Result> supplier) {
+        UserDTO user = UserHolder.getUser();
+        return Mono.fromCallable(() -> {
+            UserHolder.saveUser(user);
+            try {
+                return supplier.get();
+            } finally {
+                UserHolder.removeUser();
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+}
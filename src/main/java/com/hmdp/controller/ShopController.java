@@ -7,9 +7,11 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.ViewStatRecorder;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
 
 /**
  * <p>
@@ -26,6 +28,9 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private ViewStatRecorder viewStatRecorder;
+
     /**
      * 根据id查询商铺信息
      *
@@ -33,10 +38,23 @@ public class ShopController {
      * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
+    public Result queryShopById(@PathVariable("id") Long id, HttpServletRequest request) {
+        // 访问统计，只写本地缓冲区
+        viewStatRecorder.record(ViewStatRecorder.TYPE_SHOP, id, ViewStatRecorder.visitorOf(request));
         return shopService.queryShopById(id);
     }
 
+    /**
+     * 查询商铺详情，包含商铺信息、类型名称和优惠券列表
+     *
+     * @param id 商铺id
+     * @return 商铺详情数据
+     */
+    @GetMapping("/detail/{id}")
+    public Result queryShopDetail(@PathVariable("id") Long id) {
+        return shopService.queryShopDetail(id);
+    }
+
     /**
      * 新增商铺信息
      *
@@ -45,10 +63,7 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -81,6 +96,25 @@ public class ShopController {
       return shopService.queryShopByType(typeId,current,x,y);
     }
 
+    /**
+     * 分类下的店铺排行榜（销量/评分），滚动分页
+     *
+     * @param typeId 商铺类型
+     * @param sortBy 排序字段，sold 或 score
+     * @param max    上一页最小的排行分数，第一页不传
+     * @param offset 与上一页最小分数相同的条数
+     * @return 商铺列表
+     */
+    @GetMapping("/of/type/rank")
+    public Result queryShopRankOfType(
+            @RequestParam("typeId") Long typeId,
+            @RequestParam(value = "sortBy", defaultValue = "sold") String sortBy,
+            @RequestParam(value = "max", required = false) Long max,
+            @RequestParam(value = "offset", defaultValue = "0") Integer offset
+    ) {
+        return shopService.queryShopRankOfType(typeId, sortBy, max, offset);
+    }
+
     /**
      * 根据商铺名称关键字分页查询商铺信息
      *
@@ -100,4 +134,19 @@ public class ShopController {
         // 返回数据
         return Result.ok(page.getRecords());
     }
+
+    /**
+     * 店铺名称输入联想
+     *
+     * @param prefix 已输入的名称前缀
+     * @param limit  返回条数
+     * @return 店铺id和名称列表
+     */
+    @GetMapping("/suggest")
+    public Result suggestShop(
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "limit", required = false) Integer limit
+    ) {
+        return shopService.suggestShop(prefix, limit);
+    }
 }
@@ -1,20 +1,23 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
-import com.hmdp.entity.User;
 import com.hmdp.entity.UserInfo;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.RateLimit;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.UvRecorder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
+import java.time.LocalDate;
+import java.time.YearMonth;
 
 /**
  * <p>
@@ -35,9 +38,16 @@ public class UserController {
     @Resource
     private IUserInfoService userInfoService;
 
+    @Resource
+    private UvRecorder uvRecorder;
+
     /**
      * 发送手机验证码
+     * 同一手机号每分钟1次、每小时5次，同一 ip 每小时50次
      */
+    @RateLimit(key = "#phone", window = 60, max = 1, message = "验证码发送太频繁，请稍后再试！")
+    @RateLimit(key = "#phone", window = 3600, max = 5, message = "验证码发送太频繁，请稍后再试！")
+    @RateLimit(window = 3600, max = 50)
     @PostMapping("code")
     public Result sendCode(@RequestParam("phone") String phone, HttpSession session) {
         return userService.sendCode(phone);
@@ -46,8 +56,12 @@ public class UserController {
     /**
      * 登录功能
      *
+     * 同一手机号5分钟内最多尝试10次，避免暴力猜测验证码；同一 ip 每分钟30次
+     *
      * @param loginForm 登录参数，包含手机号、验证码；或者手机号、密码
      */
+    @RateLimit(key = "#loginForm?.phone", window = 300, max = 10)
+    @RateLimit(window = 60, max = 30)
     @PostMapping("/login")
     public Result login(@RequestBody LoginFormDTO loginForm, HttpSession session) {
         return userService.login(loginForm);
@@ -59,10 +73,8 @@ public class UserController {
      * @return 无
      */
     @PostMapping("/logout")
-    public Result logout() {
-        // TODO 实现登出功能
-
-        return Result.fail("功能未完成");
+    public Result logout(@RequestHeader(value = "authorization", required = false) String token) {
+        return userService.logout(token);
     }
 
     @GetMapping("/me")
@@ -88,11 +100,10 @@ public class UserController {
 
     @GetMapping("/{id}")
     public Result queryUserById(@PathVariable("id") Long userId) {
-        User user = userService.getById(userId);
-        if (user == null) {
+        UserDTO userDTO = userService.queryUserDTOById(userId);
+        if (userDTO == null) {
             return Result.ok();
         }
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
         return Result.ok(userDTO);
     }
 
@@ -106,4 +117,49 @@ public class UserController {
         return userService.signCount();
     }
 
+    /**
+     * 补签
+     * @param date 补签日期
+     * @return
+     */
+    @PostMapping("/sign/makeup")
+    public Result makeupSign(@RequestParam("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return userService.makeupSign(date);
+    }
+
+    /**
+     * 签到日历
+     * @param year 年份，默认今年
+     * @return
+     */
+    @GetMapping("/sign/calendar")
+    public Result querySignCalendar(@RequestParam(value = "year", required = false) Integer year) {
+        return userService.querySignCalendar(year == null ? LocalDate.now().getYear() : year);
+    }
+
+    /**
+     * 全站UV
+     * @param period day、week、month
+     * @param date 统计日期，默认今天；week 为所在周，month 为所在月
+     * @return
+     */
+    @GetMapping("/uv")
+    public Result uv(
+            @RequestParam(value = "period", defaultValue = "day") String period,
+            @RequestParam(value = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        if (date == null) {
+            date = LocalDate.now();
+        }
+        switch (period) {
+            case "day":
+                return Result.ok(uvRecorder.countOfDay(date));
+            case "week":
+                return Result.ok(uvRecorder.countOfWeek(date));
+            case "month":
+                return Result.ok(uvRecorder.countOfMonth(YearMonth.from(date)));
+            default:
+                return Result.fail("不支持的统计周期！");
+        }
+    }
+
 }
@@ -0,0 +1,14 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ShopDetailDTO {
+    private Shop shop;
+    private String typeName;
+    private List<Voucher> vouchers;
+}
@@ -0,0 +1,15 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SignCalendarDTO {
+    private Integer year;
+    // 每月的签到记录，第 d 位（从0开始）为1表示 d+1 号已签到
+    private List<Integer> months;
+    // 每月的签到天数
+    private List<Integer> monthCounts;
+    private Integer total;
+}
@@ -0,0 +1,15 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewStatDTO {
+    // 统计时间段，yyyyMMddHH / yyyyMMdd / yyyyMM
+    private String time;
+    private Long uv;
+    private Long pv;
+}
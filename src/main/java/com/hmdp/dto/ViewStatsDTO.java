@@ -0,0 +1,13 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ViewStatsDTO {
+    // 整个时间范围去重后的 UV
+    private Long uv;
+    private Long pv;
+    private List<ViewStatDTO> points;
+}
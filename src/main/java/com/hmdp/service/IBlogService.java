@@ -16,6 +16,8 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryHotBlog(Integer current);
 
+    Result queryHotBlogOfScroll(Long max, Integer offset);
+
     Result queryBlogById(Long id);
 
     Result likeBlog(Long id);
@@ -26,4 +28,6 @@ public interface IBlogService extends IService<Blog> {
     Result saveBlog(Blog blog);
 
     Result queryBlogOfFollow(long max, Integer offset);
+
+    Result queryBlogOfUser(Long userId, Long max, Long lastId);
 }
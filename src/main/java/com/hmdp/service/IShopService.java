@@ -16,7 +16,15 @@ public interface IShopService extends IService<Shop> {
 
     Result queryShopById(Long id);
 
+    Result queryShopDetail(Long id);
+
+    Result saveShop(Shop shop);
+
     Result updateShop(Shop shop);
 
     Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    Result suggestShop(String prefix, Integer limit);
+
+    Result queryShopRankOfType(Long typeId, String sortBy, Long max, Integer offset);
 }
@@ -0,0 +1,20 @@
+package com.hmdp.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.entity.Sign;
+
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * <p>
+ *  服务类
+ * </p>
+ */
+public interface ISignService extends IService<Sign> {
+
+    void archiveMonth(YearMonth month);
+
+    Map<YearMonth, Integer> queryArchivedBits(Long userId, Collection<YearMonth> months);
+}
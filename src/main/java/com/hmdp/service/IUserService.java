@@ -3,8 +3,13 @@ package com.hmdp.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * <p>
  *  服务类
@@ -20,7 +25,19 @@ public interface IUserService extends IService<User> {
 
     Result login(LoginFormDTO loginForm);
 
+    Result logout(String token);
+
     Result sign();
 
     Result signCount();
+
+    Result makeupSign(LocalDate date);
+
+    Result querySignCalendar(Integer year);
+
+    UserDTO queryUserDTOById(Long id);
+
+    Map<Long, UserDTO> queryUserDTOByIds(Collection<Long> ids);
+
+    void evictUserCache(Long id);
 }
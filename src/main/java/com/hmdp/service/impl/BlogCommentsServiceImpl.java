@@ -1,10 +1,38 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
 import com.hmdp.entity.BlogComments;
 import com.hmdp.mapper.BlogCommentsMapper;
+import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogCommentsService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.CounterDeltaFlusher;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -14,7 +42,199 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogCommentsServiceImpl extends ServiceImpl<BlogCommentsMapper, BlogComments> implements IBlogCommentsService {
 
+    @Resource
+    private BlogMapper blogMapper;
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CounterDeltaFlusher counterDeltaFlusher;
+
+    /**
+     * 发表评论
+     * - parentId 为空或0：一级评论
+     * - parentId 为一级评论id：回复，answerId 为被回复的评论（默认回复一级评论本身）
+     */
+    @Override
+    public Result saveComment(BlogComments comment) {
+        // 1 校验
+        if (StrUtil.isBlank(comment.getContent())) {
+            return Result.fail("评论内容不能为空！");
+        }
+        Blog blog = blogMapper.selectById(comment.getBlogId());
+        if (blog == null) {
+            return Result.fail("笔记不存在！");
+        }
+        Long parentId = comment.getParentId();
+        if (parentId == null || parentId == 0) {
+            // 1.1 一级评论
+            comment.setParentId(0L);
+            comment.setAnswerId(0L);
+        } else {
+            // 1.2 回复：parent 必须是同一篇笔记下的一级评论
+            BlogComments parent = getById(parentId);
+            if (parent == null || !parent.getBlogId().equals(blog.getId()) || parent.getParentId() != 0
+                    || !isVisible(parent)) {
+                return Result.fail("回复的评论不存在！");
+            }
+            Long answerId = comment.getAnswerId();
+            if (answerId == null || answerId == 0 || answerId.equals(parentId)) {
+                comment.setAnswerId(parentId);
+            } else {
+                // 被回复的评论必须在同一个楼中
+                BlogComments answer = getById(answerId);
+                if (answer == null || !parentId.equals(answer.getParentId()) || !isVisible(answer)) {
+                    return Result.fail("回复的评论不存在！");
+                }
+            }
+        }
+        // 2 保存
+        comment.setUserId(UserHolder.getUser().getId());
+        comment.setLiked(0);
+        comment.setStatus(false);
+        save(comment);
+        // 3 评论数增量写入 Redis，由定时任务批量写回
+        stringRedisTemplate.opsForHash().increment(BLOG_COMMENTS_DELTA_KEY, blog.getId().toString(), 1);
+        // 4 一级评论会改变首页，删除缓存
+        if (comment.getParentId() == 0) {
+            stringRedisTemplate.delete(CACHE_BLOG_COMMENTS_KEY + blog.getId());
+        }
+        return Result.ok(comment.getId());
+    }
+
+    /**
+     * 删除自己的评论，删除一级评论时一并删除其下的回复
+     * - 评论数只统计正常状态的评论，删除时只扣减其中正常状态的条数
+     * - 删除在一个事务中完成，事务提交后才写入 Redis 的评论数增量
+     */
+    @Override
+    @Transactional
+    public Result deleteComment(Long id) {
+        BlogComments comment = getById(id);
+        if (comment == null) {
+            return Result.ok();
+        }
+        if (!comment.getUserId().equals(UserHolder.getUser().getId())) {
+            return Result.fail("只能删除自己的评论！");
+        }
+        int removed = getBaseMapper().deleteById(id) > 0 && isVisible(comment) ? 1 : 0;
+        if (comment.getParentId() == 0) {
+            // 先删除正常状态的回复并计数，再删除其余回复
+            removed += getBaseMapper().delete(new QueryWrapper<BlogComments>()
+                    .eq("parent_id", id).and(w -> w.eq("status", 0).or().isNull("status")));
+            getBaseMapper().delete(new QueryWrapper<BlogComments>().eq("parent_id", id));
+        }
+        // 事务提交后再删除缓存、扣减评论数，回滚时不修改
+        int delta = removed;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                if (comment.getParentId() == 0) {
+                    stringRedisTemplate.delete(CACHE_BLOG_COMMENTS_KEY + comment.getBlogId());
+                }
+                if (delta > 0) {
+                    stringRedisTemplate.opsForHash().increment(BLOG_COMMENTS_DELTA_KEY, comment.getBlogId().toString(), -delta);
+                }
+            }
+        });
+        return Result.ok();
+    }
+
+    /**
+     * 查询笔记的一级评论，按id倒序滚动分页
+     * - WHERE blog_id = ? AND parent_id = 0 AND id < lastId，走 (blog_id, parent_id, id) 索引，不用 OFFSET
+     * - 首页缓存在 Redis，新增或删除一级评论时删除
+     *
+     * @param lastId 上一页最后一条评论的id，第一页不传
+     */
+    @Override
+    public Result queryCommentsOfBlog(Long blogId, Long lastId) {
+        List<BlogComments> comments;
+        if (lastId == null) {
+            String key = CACHE_BLOG_COMMENTS_KEY + blogId;
+            String json = stringRedisTemplate.opsForValue().get(key);
+            if (json != null) {
+                comments = JSONUtil.toList(json, BlogComments.class);
+            } else {
+                comments = queryVisible()
+                        .eq("blog_id", blogId).eq("parent_id", 0)
+                        .orderByDesc("id")
+                        .last("LIMIT " + SystemConstants.COMMENTS_PAGE_SIZE)
+                        .list();
+                stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(comments), CACHE_BLOG_COMMENTS_TTL, TimeUnit.MINUTES);
+            }
+        } else {
+            comments = queryVisible()
+                    .eq("blog_id", blogId).eq("parent_id", 0).lt("id", lastId)
+                    .orderByDesc("id")
+                    .last("LIMIT " + SystemConstants.COMMENTS_PAGE_SIZE)
+                    .list();
+        }
+        return Result.ok(toScrollResult(comments));
+    }
+
+    /**
+     * 查询一级评论下的回复，按id正序滚动分页
+     *
+     * @param lastId 上一页最后一条回复的id，第一页不传
+     */
+    @Override
+    public Result queryReplies(Long parentId, Long lastId) {
+        List<BlogComments> replies = queryVisible()
+                .eq("parent_id", parentId).gt("id", lastId == null ? 0 : lastId)
+                .orderByAsc("id")
+                .last("LIMIT " + SystemConstants.COMMENTS_PAGE_SIZE)
+                .list();
+        return Result.ok(toScrollResult(replies));
+    }
+
+    /**
+     * 批量填充评论用户，封装滚动分页结果
+     */
+    private ScrollResult toScrollResult(List<BlogComments> comments) {
+        ScrollResult r = new ScrollResult();
+        r.setList(comments);
+        if (comments.isEmpty()) {
+            return r;
+        }
+        Set<Long> userIds = comments.stream().map(BlogComments::getUserId).collect(Collectors.toSet());
+        Map<Long, UserDTO> userMap = userService.queryUserDTOByIds(userIds);
+        for (BlogComments comment : comments) {
+            UserDTO user = userMap.get(comment.getUserId());
+            if (user != null) {
+                comment.setName(user.getNickName());
+                comment.setIcon(user.getIcon());
+            }
+        }
+        r.setLastId(comments.get(comments.size() - 1).getId());
+        return r;
+    }
+
+    /**
+     * 定时把 Redis 中累计的评论数增量批量写回 tb_blog.comments
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flushCommentsDelta() {
+        counterDeltaFlusher.flush(BLOG_COMMENTS_DELTA_KEY, SystemConstants.COMMENTS_FLUSH_BATCH_SIZE,
+                blogMapper::incrCommentsBatch);
+    }
+
+    private static boolean isVisible(BlogComments comment) {
+        return comment.getStatus() == null || !comment.getStatus();
+    }
+
+    /**
+     * 只查询正常状态的评论：status 为0，历史数据可能为 NULL
+     */
+    private QueryChainWrapper<BlogComments> queryVisible() {
+        return query().and(w -> w.eq("status", 0).or().isNull("status"));
+    }
 }
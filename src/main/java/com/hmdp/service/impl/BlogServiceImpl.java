@@ -1,35 +1,66 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import cn.hutool.json.JSONUtil;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.entity.Follow;
-import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CounterDeltaFlusher;
+import com.hmdp.utils.SimpleRedisLock;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.BLOG_HOT_PAGE_CACHE_MILLIS;
+import static com.hmdp.utils.SystemConstants.LIKED_TOP_SIZE;
 
 /**
  * <p>
@@ -39,6 +70,7 @@ import static com.hmdp.utils.RedisConstants.FEED_KEY;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
@@ -48,23 +80,159 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private IFollowService followService;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ExecutorService feedPushExecutor;
+    @Resource
+    private CounterDeltaFlusher counterDeltaFlusher;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+    }
 
+    // 热门blog页面本地缓存，缓存的blog已填充作者信息，不含当前用户是否点赞
+    // 读取时不刷新最后访问时间，写入 BLOG_HOT_PAGE_CACHE_MILLIS 后过期，持续被读取的页面也会按时刷新
+    private final LRUCache<String, List<Blog>> hotPageCache = CacheUtil.newLRUCache(1000, BLOG_HOT_PAGE_CACHE_MILLIS);
+
+    /**
+     * 热门blog，按页码分页
+     * - 排行榜为 Redis 中的 ZSET，ZREVRANGE 按排名取一页，不对 tb_blog 排序
+     */
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
-        Page<Blog> page = query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-//        records.forEach(blog -> queryBlogUser(blog));
-//        records.forEach(this::queryBlogUser);
-        records.forEach(blog -> {
-            queryBlogUser(blog);
-            isBlogLiked(blog);
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        long start = (long) (current - 1) * size;
+        List<Blog> page = hotPageCache.get("page:" + current, false, () -> {
+            Set<String> ids = stringRedisTemplate.opsForZSet().reverseRange(BLOG_HOT_KEY, start, start + size - 1);
+            return loadHotPage(ids);
         });
-        return Result.ok(records);
+        return Result.ok(withLiked(page));
+    }
+
+    /**
+     * 热门blog，按点赞数游标滚动分页
+     *
+     * @param max    上一页最小的点赞数，第一页不传
+     * @param offset 与上一页最小点赞数相同的条数
+     */
+    @Override
+    public Result queryHotBlogOfScroll(Long max, Integer offset) {
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        double maxScore = max == null ? Double.POSITIVE_INFINITY : max;
+        // 1 按分数查询一页
+        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet()
+                .reverseRangeByScoreWithScores(BLOG_HOT_KEY, Double.NEGATIVE_INFINITY, maxScore, offset, size);
+        if (typedTuples == null || typedTuples.isEmpty()) {
+            return Result.ok();
+        }
+        // 2 解析id、最小分数和偏移量
+        List<String> ids = new ArrayList<>(typedTuples.size());
+        long minScore = 0;
+        int os = 1;
+        boolean first = true;
+        for (ZSetOperations.TypedTuple<String> typedTuple : typedTuples) {
+            ids.add(typedTuple.getValue());
+            long score = typedTuple.getScore().longValue();
+            if (!first && score == minScore) {
+                os++;
+            } else {
+                minScore = score;
+                os = 1;
+            }
+            first = false;
+        }
+        if (max != null && minScore == max) {
+            os += offset;
+        }
+        // 3 查询blog，作者信息随页面一起缓存；按这一页的id缓存，保证与返回的游标一致
+        List<Blog> page = hotPageCache.get("scroll:" + String.join(",", ids), false, () -> loadHotPage(ids));
+        // 4 封装返回
+        ScrollResult r = new ScrollResult();
+        r.setList(withLiked(page));
+        r.setMinTime(minScore);
+        r.setOffset(os);
+        return Result.ok(r);
+    }
+
+    /**
+     * 根据排行榜中的id查询blog，并填充作者信息
+     */
+    private List<Blog> loadHotPage(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String strIds = StrUtil.join(",", ids);
+        List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id," + strIds + ")").list();
+        hydrateAuthors(blogs);
+        return blogs;
+    }
+
+    /**
+     * 复制缓存的blog，再填充当前用户是否点赞，不修改缓存中的对象
+     */
+    private List<Blog> withLiked(List<Blog> cached) {
+        List<Blog> blogs = cached.stream()
+                .map(blog -> BeanUtil.copyProperties(blog, Blog.class))
+                .collect(Collectors.toList());
+        hydrateLiked(blogs);
+        return blogs;
+    }
+
+    /**
+     * 维护热门排行榜：不存在（被淘汰或清空）时从数据库重建，并裁剪到 BLOG_HOT_MAX_SIZE 条
+     * - 排行榜由点赞脚本 ZINCRBY 增量维护，被点赞但不在榜中的blog由 likeBlog 补入
+     */
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void maintainHotRank() {
+        ensureHotRank();
+        stringRedisTemplate.opsForZSet().removeRange(BLOG_HOT_KEY, 0, -SystemConstants.BLOG_HOT_MAX_SIZE - 1);
+    }
+
+    /**
+     * 热门排行榜不存在时从数据库重建，分布式锁保证只有一个节点重建
+     */
+    private void ensureHotRank() {
+        if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+            return;
+        }
+        SimpleRedisLock lock = new SimpleRedisLock("blog:hot:rebuild", stringRedisTemplate);
+        if (!lock.tryLock(60)) {
+            return;
+        }
+        try {
+            if (BooleanUtil.isFalse(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+                rebuildHotRank();
+            }
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 按点赞数取前 BLOG_HOT_MAX_SIZE 条重建，先写临时key，再 RENAME 覆盖
+     */
+    private void rebuildHotRank() {
+        Set<ZSetOperations.TypedTuple<String>> tuples = query().select("id", "liked")
+                .orderByDesc("liked")
+                .last("LIMIT " + SystemConstants.BLOG_HOT_MAX_SIZE)
+                .list().stream()
+                .map(blog -> new DefaultTypedTuple<>(
+                        blog.getId().toString(),
+                        blog.getLiked() == null ? 0D : blog.getLiked().doubleValue()))
+                .collect(Collectors.toSet());
+        if (tuples.isEmpty()) {
+            return;
+        }
+        String tmpKey = BLOG_HOT_KEY + ":tmp";
+        stringRedisTemplate.delete(tmpKey);
+        stringRedisTemplate.opsForZSet().add(tmpKey, tuples);
+        stringRedisTemplate.rename(tmpKey, BLOG_HOT_KEY);
+        log.info("热门排行榜重建完成，条数：{}", tuples.size());
     }
 
     @Override
@@ -74,39 +242,210 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (blog == null) {
             return Result.fail("笔记不存在");
         }
-        // 设置blog用户信息
-        queryBlogUser(blog);
-        // 判断当前用户是否点赞
-        isBlogLiked(blog);
+        // 设置blog用户信息、当前用户是否点赞
+        hydrateBlogs(Collections.singletonList(blog));
         return Result.ok(blog);
     }
 
     /**
-     * blog是否被当前用户点赞
+     * 批量填充blog的作者信息、当前用户是否点赞
+     */
+    private void hydrateBlogs(List<Blog> blogs) {
+        hydrateAuthors(blogs);
+        hydrateLiked(blogs);
+    }
+
+    /**
+     * 批量填充作者信息：收集全部作者id，一次查询
      */
-    private void isBlogLiked(Blog blog) {
+    private void hydrateAuthors(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, UserDTO> userMap = userService.queryUserDTOByIds(userIds);
+        for (Blog blog : blogs) {
+            UserDTO user = userMap.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+    }
+
+    // 用户点赞过的blog id本地缓存，有序 long[]，写时复制，按 binarySearch 判断是否点赞
+    // 点赞/取消点赞时本节点直接修改，并通过发布订阅通知其它节点删除
+    private static final int USER_LIKED_CAPACITY = 10000;
+    private static final long USER_LIKED_TTL_MILLIS = 10 * 60 * 1000L;
+    private final LRUCache<Long, long[]> userLikedCache = CacheUtil.newLRUCache(USER_LIKED_CAPACITY, USER_LIKED_TTL_MILLIS);
+    // 按用户id分段的修改版本号，加载期间同一分段有修改时，加载结果可能已过期，不放入缓存
+    private static final int USER_LIKED_STRIPES = 1024;
+    private final AtomicLongArray userLikedVersions = new AtomicLongArray(USER_LIKED_STRIPES);
+    // 本节点标识，收到自己发布的点赞变更消息时忽略
+    private static final String NODE_ID = UUID.randomUUID().toString(true);
+
+    @PostConstruct
+    public void init() {
+        // 订阅其它节点的点赞变更消息，删除本地缓存
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> onLikedChanged(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(USER_LIKED_CHANNEL));
+    }
+
+    /**
+     * 批量填充当前用户是否点赞
+     * - 用户点赞过的blog集合整体加载到本地，列表页每条blog判断都不访问 Redis
+     */
+    private void hydrateLiked(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
         // 获取登录用户
         UserDTO userDTO = UserHolder.getUser();
         if (userDTO == null) {
             return;
         }
-        Long userId = userDTO.getId();
-        // ZSET 判断当前用户是否点赞
-        String key = BLOG_LIKED_KEY + blog.getId();
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        blog.setIsLike(score != null);
+        long[] likedIds = queryLikedBlogIds(userDTO.getId());
+        for (Blog blog : blogs) {
+            blog.setIsLike(Arrays.binarySearch(likedIds, blog.getId()) >= 0);
+        }
     }
 
     /**
-     * 查询笔记的用户信息
-     *
-     * @param blog
+     * 查询用户点赞过的blog id，本地缓存未命中时 SMEMBERS user:liked:{userId} 加载
+     * - 读取不刷新最后访问时间，写入 USER_LIKED_TTL_MILLIS 后过期
+     * - 加载在锁外进行，放入缓存与点赞修改在同一把锁内，加载期间发生的点赞不会被旧结果覆盖
      */
-    private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+    private long[] queryLikedBlogIds(Long userId) {
+        long[] cached = userLikedCache.get(userId, false);
+        if (cached != null) {
+            return cached;
+        }
+        int stripe = likedStripe(userId);
+        long version = userLikedVersions.get(stripe);
+        Set<String> members = stringRedisTemplate.opsForSet().members(USER_LIKED_KEY + userId);
+        long[] likedIds = members == null || members.isEmpty()
+                ? new long[0]
+                : members.stream().mapToLong(Long::parseLong).sorted().toArray();
+        synchronized (userLikedCache) {
+            if (userLikedVersions.get(stripe) == version) {
+                userLikedCache.put(userId, likedIds);
+            }
+        }
+        return likedIds;
+    }
+
+    private static int likedStripe(Long userId) {
+        return (int) (userId & (USER_LIKED_STRIPES - 1));
+    }
+
+    /**
+     * 其它节点的用户点赞/取消点赞：删除本地缓存，下次查询重新加载
+     */
+    private void onLikedChanged(String message) {
+        int i = message.indexOf(':');
+        if (i < 0 || NODE_ID.equals(message.substring(0, i))) {
+            return;
+        }
+        Long userId = Long.valueOf(message.substring(i + 1));
+        synchronized (userLikedCache) {
+            userLikedVersions.incrementAndGet(likedStripe(userId));
+            userLikedCache.remove(userId);
+        }
+    }
+
+    private static final int LIKED_BACKFILL_BATCH_SIZE = 1000;
+
+    /**
+     * 一次性把改造前 blog:liked:{blogId} 中的点赞用户补入 user:liked:{userId}，并删除废弃的点赞位图分片
+     * - 完成后写入标记，之后不再执行
+     */
+    @Scheduled(initialDelay = 60 * 1000, fixedDelay = 24 * 60 * 60 * 1000)
+    public void backfillUserLiked() {
+        if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(USER_LIKED_BACKFILL_KEY))) {
+            return;
+        }
+        SimpleRedisLock lock = new SimpleRedisLock("blog:liked:backfill", stringRedisTemplate);
+        if (!lock.tryLock(3600)) {
+            return;
+        }
+        try {
+            ScanOptions options = ScanOptions.scanOptions().match(BLOG_LIKED_KEY + "*").count(1000).build();
+            Long total = stringRedisTemplate.execute((RedisCallback<Long>) connection -> {
+                long count = 0;
+                try (Cursor<byte[]> cursor = connection.scan(options)) {
+                    while (cursor.hasNext()) {
+                        count += backfillBlogLikes(new String(cursor.next(), StandardCharsets.UTF_8));
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException("用户点赞集合补全失败", e);
+                }
+                return count;
+            });
+            stringRedisTemplate.opsForValue().set(USER_LIKED_BACKFILL_KEY, "1");
+            log.info("用户点赞集合补全完成，点赞数：{}", total);
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    private long backfillBlogLikes(String key) {
+        String blogId = key.substring(BLOG_LIKED_KEY.length());
+        if (blogId.startsWith("bits:")) {
+            stringRedisTemplate.delete(key);
+            return 0;
+        }
+        if (!NumberUtil.isLong(blogId)) {
+            return 0;
+        }
+        long count = 0;
+        for (long start = 0; ; start += LIKED_BACKFILL_BATCH_SIZE) {
+            Set<String> userIds = stringRedisTemplate.opsForZSet().range(key, start, start + LIKED_BACKFILL_BATCH_SIZE - 1);
+            if (userIds == null || userIds.isEmpty()) {
+                break;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String userId : userIds) {
+                    conn.sAdd(USER_LIKED_KEY + userId, blogId);
+                }
+                return null;
+            });
+            count += userIds.size();
+            if (userIds.size() < LIKED_BACKFILL_BATCH_SIZE) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 点赞/取消点赞后同步更新本地缓存，未缓存时等下次查询再加载，并通知其它节点删除缓存
+     */
+    private void updateLikedBlogIds(Long userId, Long blogId, boolean liked) {
+        stringRedisTemplate.convertAndSend(USER_LIKED_CHANNEL, NODE_ID + ":" + userId);
+        synchronized (userLikedCache) {
+            // 正在进行的加载可能读到修改前的数据，不再放入缓存
+            userLikedVersions.incrementAndGet(likedStripe(userId));
+            long[] likedIds = userLikedCache.get(userId, false);
+            if (likedIds == null) {
+                return;
+            }
+            int i = Arrays.binarySearch(likedIds, blogId);
+            if (liked && i < 0) {
+                int pos = -i - 1;
+                long[] newIds = new long[likedIds.length + 1];
+                System.arraycopy(likedIds, 0, newIds, 0, pos);
+                newIds[pos] = blogId;
+                System.arraycopy(likedIds, pos, newIds, pos + 1, likedIds.length - pos);
+                userLikedCache.put(userId, newIds);
+            } else if (!liked && i >= 0) {
+                long[] newIds = new long[likedIds.length - 1];
+                System.arraycopy(likedIds, 0, newIds, 0, i);
+                System.arraycopy(likedIds, i + 1, newIds, i, likedIds.length - i - 1);
+                userLikedCache.put(userId, newIds);
+            }
+        }
     }
 
     /**
@@ -115,28 +454,50 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Override
     public Result likeBlog(Long blogId) {
         Long userId = UserHolder.getUser().getId();
-        String key = BLOG_LIKED_KEY + blogId;
-        // zscore k，查询 ZSET 里是否存在 userId
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        if (score == null) {
-            // 没点赞点赞
-            boolean isSuccess = update().setSql("liked = liked + 1").eq("id", blogId).update();
-            if (isSuccess) {
-                // zadd k v score，添加 userId 到 ZSET 中，score为时间戳
-                stringRedisTemplate.opsForZSet()
-                        .add(key, userId.toString(), System.currentTimeMillis());
+        Long r = executeLike(blogId, userId);
+        if (r != null && r == 0) {
+            // 热门排行榜中没有该blog（新blog、被裁剪或排行榜丢失）：排行榜丢失时先重建，确认blog存在后补入排行榜，再重试
+            ensureHotRank();
+            Blog blog = query().select("id", "liked").eq("id", blogId).one();
+            if (blog == null) {
+                return Result.fail("笔记不存在");
             }
-        } else {
-            // 点赞了取消
-            update().setSql("liked = liked - 1").eq("id", blogId).update();
-            // zset 集合移除 userId
-            stringRedisTemplate.opsForZSet().remove(key, userId.toString());
+            stringRedisTemplate.opsForZSet().addIfAbsent(BLOG_HOT_KEY, blogId.toString(),
+                    blog.getLiked() == null ? 0D : blog.getLiked().doubleValue());
+            r = executeLike(blogId, userId);
         }
+        updateLikedBlogIds(userId, blogId, r != null && r > 0);
         return Result.ok();
     }
 
+    /**
+     * lua 脚本原子地完成：判断blog是否存在、是否点赞、维护用户点赞集合、最先点赞的用户、累加点赞数增量
+     * - 是否点赞以用户点赞集合 user:liked:{userId} 为准，兼容改造前只记录在 blog:liked:{blogId} 中的点赞
+     * - 点赞数由定时任务批量写回数据库
+     *
+     * @return 1 点赞，-1 取消点赞，0 热门排行榜中没有该blog
+     */
+    private Long executeLike(Long blogId, Long userId) {
+        return stringRedisTemplate.execute(
+                LIKE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + blogId, BLOG_LIKED_DELTA_KEY, BLOG_HOT_KEY, USER_LIKED_KEY + userId),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), blogId.toString(),
+                String.valueOf(LIKED_TOP_SIZE)
+        );
+    }
+
+    /**
+     * 定时把 Redis 中累计的点赞数增量批量写回 tb_blog.liked
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flushLikedDelta() {
+        counterDeltaFlusher.flush(BLOG_LIKED_DELTA_KEY, SystemConstants.LIKED_FLUSH_BATCH_SIZE,
+                getBaseMapper()::incrLikedBatch);
+    }
+
     /**
      * 点赞排行榜：获取最先点赞的top5用户
+     * - blog:liked:{blogId} 只保留最先点赞的 LIKED_TOP_SIZE 个用户，不再保存全部点赞用户
      */
     @Override
     public Result queryBlogLikes(Long blogId) {
@@ -148,20 +509,21 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         }
         // userId，String-->Long
         List<Long> ids = top5.stream().map(Long::valueOf).collect(Collectors.toList());
-        String strIds = StrUtil.join(",", ids);
-        // db 查询用户信息
-        List<UserDTO> userDTOS = userService
-                // 注意：mysql的in不保证有序性，order by field(id, id1, id2 ...) 保证有序
-                .query().in("id", ids).last("ORDER BY FIELD(id," + strIds + ")").list()
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+        // 批量查询用户信息，按点赞顺序返回
+        Map<Long, UserDTO> userMap = userService.queryUserDTOByIds(ids);
+        List<UserDTO> userDTOS = ids.stream()
+                .map(userMap::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
 
         return Result.ok(userDTOS);
     }
 
     /**
-     * 发blog，推送到粉丝的收件箱
+     * 发blog，推拉结合：
+     * - 所有blog写入作者的发件箱
+     * - 普通作者：异步推送到粉丝的收件箱
+     * - 大V作者（粉丝数超过阈值）：不推送，粉丝读取时从发件箱拉取
      * @param blog
      * @return
      */
@@ -170,27 +532,127 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         // 1.获取登录用户
         UserDTO user = UserHolder.getUser();
         blog.setUserId(user.getId());
+        // 创建时间精确到秒，与 feed 中的时间戳一致，便于从 MySQL 兜底查询时衔接
+        LocalDateTime createTime = LocalDateTime.now().withNano(0);
+        blog.setCreateTime(createTime);
         // 2.保存探店博文
         boolean isSuccess = save(blog);
         if (BooleanUtil.isFalse(isSuccess)) {
             return Result.fail("新增blog失败");
         }
-        // 3.查询blog作者的所有粉丝
-        List<Follow> follows = followService.query().eq("follow_user_id", blog.getUserId()).list();
-        // 4.推送blog到粉丝的收件箱
-        for (Follow follow : follows) {
-            // 4.1 获取粉丝id
-            Long userId = follow.getUserId();
-            // 4.2 推送
-            String key = FEED_KEY + userId;
-            stringRedisTemplate.opsForZSet().add(key, blog.getId().toString(), System.currentTimeMillis());
+        // 作者主页首页缓存失效
+        stringRedisTemplate.delete(CACHE_USER_BLOG_KEY + user.getId());
+        long now = toEpochMilli(createTime);
+        String blogId = blog.getId().toString();
+        Long authorId = blog.getUserId();
+        // 3.写入作者发件箱，只保留最近的一部分
+        String outboxKey = FEED_OUTBOX_KEY + authorId;
+        stringRedisTemplate.opsForZSet().add(outboxKey, blogId, now);
+        stringRedisTemplate.opsForZSet().removeRange(outboxKey, 0, -SystemConstants.FEED_BOX_MAX_SIZE - 1);
+        // 4.根据粉丝数决定推还是拉，粉丝数读缓存的计数，不在发blog时 COUNT tb_follow
+        int fans = followService.queryFansCount(authorId);
+        String author = authorId.toString();
+        if (fans >= SystemConstants.FEED_BIG_V_FANS) {
+            // 4.1 大V，粉丝读取时拉取
+            stringRedisTemplate.opsForSet().add(FEED_BIG_V_KEY, author);
+            stringRedisTemplate.opsForSet().remove(FEED_BIG_V_RETIRED_KEY, author);
+            stringRedisTemplate.opsForZSet().remove(FEED_BIG_V_RETIRED_TIME_KEY, author);
+        } else {
+            // 4.2 普通作者，异步推送到粉丝收件箱
+            Long removed = stringRedisTemplate.opsForSet().remove(FEED_BIG_V_KEY, author);
+            if (removed != null && removed > 0) {
+                // 刚退出大V：之前发布的blog不在粉丝收件箱中，粉丝继续拉取其发件箱，直到这些blog过期
+                stringRedisTemplate.opsForSet().add(FEED_BIG_V_RETIRED_KEY, author);
+                stringRedisTemplate.opsForZSet().add(FEED_BIG_V_RETIRED_TIME_KEY, author, now);
+            }
+            if (fans > 0) {
+                feedPushExecutor.execute(() -> {
+                    try {
+                        pushToFollowers(authorId, blogId, now);
+                    } catch (Exception e) {
+                        log.error("推送blog到粉丝收件箱失败，blogId：{}", blogId, e);
+                    }
+                });
+            }
         }
         // 5.返回blogId
         return Result.ok(blog.getId());
     }
 
+    /**
+     * 退出大V超过 FEED_ACTIVE_DAYS 天的作者不再拉取发件箱，之前的blog从 MySQL 兜底读取
+     */
+    @Scheduled(cron = "0 40 4 * * ?")
+    public void cleanRetiredBigV() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(SystemConstants.FEED_ACTIVE_DAYS);
+        Set<String> authors = stringRedisTemplate.opsForZSet().rangeByScore(FEED_BIG_V_RETIRED_TIME_KEY, 0, expireBefore);
+        if (authors == null || authors.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.opsForSet().remove(FEED_BIG_V_RETIRED_KEY, authors.toArray());
+        stringRedisTemplate.opsForZSet().remove(FEED_BIG_V_RETIRED_TIME_KEY, authors.toArray());
+    }
+
+    /**
+     * 推送blog到粉丝的收件箱
+     * - 按主键分批（keyset）查询粉丝，不一次性加载全部粉丝
+     * - 跳过长期未活跃的粉丝，他们回来时从 MySQL 兜底读取
+     * - 每批粉丝的 ZADD 放在一个 pipeline 中，并裁剪收件箱长度
+     */
+    private void pushToFollowers(Long authorId, String blogId, long time) {
+        long lastId = 0;
+        while (true) {
+            // 1 查询下一批粉丝
+            List<Follow> follows = followService.query()
+                    .select("id", "user_id")
+                    .eq("follow_user_id", authorId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + SystemConstants.FEED_PUSH_BATCH_SIZE)
+                    .list();
+            if (follows.isEmpty()) {
+                return;
+            }
+            // 2 批量查询粉丝最近活跃时间，过滤出活跃粉丝
+            List<Object> lastLogins = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Follow follow : follows) {
+                    conn.zScore(LOGIN_ACTIVE_KEY, follow.getUserId().toString());
+                }
+                return null;
+            });
+            long activeSince = time - TimeUnit.DAYS.toMillis(SystemConstants.FEED_ACTIVE_DAYS);
+            List<Long> activeIds = new ArrayList<>(follows.size());
+            for (int i = 0; i < follows.size(); i++) {
+                Double lastLogin = (Double) lastLogins.get(i);
+                // 没有活跃记录的粉丝视为活跃
+                if (lastLogin == null || lastLogin >= activeSince) {
+                    activeIds.add(follows.get(i).getUserId());
+                }
+            }
+            // 3 批量推送，超出上限的旧数据从收件箱中移除
+            if (!activeIds.isEmpty()) {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Long userId : activeIds) {
+                        String key = FEED_KEY + userId;
+                        conn.zAdd(key, time, blogId);
+                        conn.zRemRange(key, 0, -SystemConstants.FEED_BOX_MAX_SIZE - 1);
+                    }
+                    return null;
+                });
+            }
+            if (follows.size() < SystemConstants.FEED_PUSH_BATCH_SIZE) {
+                return;
+            }
+            lastId = follows.get(follows.size() - 1).getId();
+        }
+    }
+
     /**
      * 查询关注列表里，关注用户的最新博文，下拉（滚动）刷新
+     * - 自己的收件箱 + 关注的大V（含近期退出大V的作者）的发件箱，按时间戳合并
+     * - Redis 中只保留最近的数据，翻到更早的位置时从 MySQL 查询
      *
      * @param max    最大的时间戳
      * @param offset 偏移量，从第几条开始查
@@ -200,26 +662,38 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     public Result queryBlogOfFollow(long max, Integer offset) {
         // 1 获取当前用户
         Long userId = UserHolder.getUser().getId();
-        // 2 查询收件箱
-        String key = FEED_KEY + userId;
-        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet().reverseRangeByScoreWithScores(key, 0, max, offset, 2);
-        // 3 非空判断
-        if (typedTuples == null || typedTuples.isEmpty()) {
-            return Result.ok();
+        // 2 查询收件箱，以及关注的大V的发件箱
+        List<ZSetOperations.TypedTuple<String>> typedTuples = queryFeedTuples(userId, max, offset);
+        List<Blog> blogs;
+        List<Long> times;
+        if (typedTuples.isEmpty()) {
+            // 3 Redis 中没有更早的数据了，从 MySQL 查询
+            blogs = queryFeedFromDb(userId, max, offset);
+            if (blogs.isEmpty()) {
+                return Result.ok();
+            }
+            times = blogs.stream().map(blog -> toEpochMilli(blog.getCreateTime())).collect(Collectors.toList());
+        } else {
+            // 4 解析收件箱数据
+            List<Long> blogIds = new ArrayList<>(typedTuples.size());
+            times = new ArrayList<>(typedTuples.size());
+            for (ZSetOperations.TypedTuple<String> typedTuple : typedTuples) {
+                // 4.1 获取blogId
+                blogIds.add(Long.valueOf(typedTuple.getValue()));
+                // 4.2 获取分数（时间戳）
+                times.add(typedTuple.getScore().longValue());
+            }
+            // 根据id查询blog
+            String strIds = StrUtil.join(",", blogIds);
+            blogs = query().in("id", blogIds).last("ORDER BY FIELD(id," + strIds + ")").list();
         }
-        // 4 解析收件箱数据
+        // 5 获取最小时间戳、偏移量
         // zset={5,5,5,5,3,3,2}
         // 第一次：max=6, offset=0, res={5,5}, offset=2,
-        // 第二次：
+        // 第二次：max=5, offset=2, res={5,5}, offset=4
         long minTime = 0;
         int os = 1;
-        List<Long> blogIds = new ArrayList<>(typedTuples.size());
-        for (ZSetOperations.TypedTuple<String> typedTuple : typedTuples) {
-            // 4.2 获取分数（时间戳）
-            long time = typedTuple.getScore().longValue();
-            // 4.1 获取blogId
-            blogIds.add(Long.valueOf(typedTuple.getValue()));
-            // 获取最小时间戳、偏移量
+        for (long time : times) {
             if (time == minTime) {
                 os++;
             } else {
@@ -227,14 +701,12 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 os = 1;
             }
         }
-        // 5 根据id查询blog
-        String strIds = StrUtil.join(",", blogIds);
-        List<Blog> blogs = query().in("id", blogIds).last("ORDER BY FIELD(id," + strIds + ")").list();
-        // 6 查询笔记的用户信息，被点赞信息
-        for (Blog blog : blogs) {
-            queryBlogUser(blog);
-            isBlogLiked(blog);
+        // 整页的时间戳都与上一页最小时间戳相同，偏移量需要累加
+        if (minTime == max) {
+            os += offset;
         }
+        // 6 批量查询笔记的用户信息，被点赞信息
+        hydrateBlogs(blogs);
         // 7 封装返回
         ScrollResult r = new ScrollResult();
         r.setList(blogs);
@@ -243,4 +715,118 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(r);
     }
 
+    /**
+     * 查询用户发布的blog，按 (create_time, id) 游标倒序滚动分页
+     * - 走 (user_id, create_time) 索引，不查总数，也没有 OFFSET
+     * - 首页缓存在 Redis，发布新blog时删除
+     *
+     * @param max    上一页最后一条的创建时间戳，第一页不传
+     * @param lastId 上一页最后一条的id，第一页不传
+     */
+    @Override
+    public Result queryBlogOfUser(Long userId, Long max, Long lastId) {
+        List<Blog> blogs;
+        if (max == null || lastId == null) {
+            // 1 首页，先查缓存
+            String key = CACHE_USER_BLOG_KEY + userId;
+            String json = stringRedisTemplate.opsForValue().get(key);
+            if (json != null) {
+                blogs = JSONUtil.toList(json, Blog.class);
+            } else {
+                blogs = query()
+                        .eq("user_id", userId)
+                        .orderByDesc("create_time", "id")
+                        .last("LIMIT " + SystemConstants.MAX_PAGE_SIZE)
+                        .list();
+                stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(blogs), CACHE_USER_BLOG_TTL, TimeUnit.MINUTES);
+            }
+        } else {
+            // 2 (create_time, id) < (max, lastId)
+            LocalDateTime maxTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(max), ZoneId.systemDefault());
+            blogs = query()
+                    .eq("user_id", userId)
+                    .and(w -> w.lt("create_time", maxTime)
+                            .or(o -> o.eq("create_time", maxTime).lt("id", lastId)))
+                    .orderByDesc("create_time", "id")
+                    .last("LIMIT " + SystemConstants.MAX_PAGE_SIZE)
+                    .list();
+        }
+        // 3 封装返回
+        ScrollResult r = new ScrollResult();
+        r.setList(blogs);
+        if (!blogs.isEmpty()) {
+            Blog last = blogs.get(blogs.size() - 1);
+            r.setMinTime(toEpochMilli(last.getCreateTime()));
+            r.setLastId(last.getId());
+        }
+        return Result.ok(r);
+    }
+
+    /**
+     * 从 MySQL 查询关注用户的blog，游标语义与 Redis 中的 feed 一致：
+     * 创建时间 <= max，跳过与 max 相同的前 offset 条
+     */
+    private List<Blog> queryFeedFromDb(Long userId, long max, int offset) {
+        Set<String> followIds = stringRedisTemplate.opsForSet().members(FOLLOWS_KEY + userId);
+        if (followIds == null || followIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return query()
+                .in("user_id", followIds)
+                .le("create_time", LocalDateTime.ofInstant(Instant.ofEpochMilli(max), ZoneId.systemDefault()))
+                .orderByDesc("create_time", "id")
+                .last("LIMIT " + offset + "," + SystemConstants.FEED_PAGE_SIZE)
+                .list();
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 查询一页 feed，按时间戳倒序
+     * - 只有收件箱时直接在 Redis 分页
+     * - 有关注的大V时，每个来源取 offset+size 条，合并后再跳过 offset 条
+     */
+    private List<ZSetOperations.TypedTuple<String>> queryFeedTuples(Long userId, long max, int offset) {
+        int size = SystemConstants.FEED_PAGE_SIZE;
+        // 关注的大V，以及近期退出大V的作者（退出前的blog只在其发件箱中）
+        Set<String> bigVs = new HashSet<>();
+        Set<String> current = stringRedisTemplate.opsForSet().intersect(FOLLOWS_KEY + userId, FEED_BIG_V_KEY);
+        Set<String> retired = stringRedisTemplate.opsForSet().intersect(FOLLOWS_KEY + userId, FEED_BIG_V_RETIRED_KEY);
+        if (current != null) {
+            bigVs.addAll(current);
+        }
+        if (retired != null) {
+            bigVs.addAll(retired);
+        }
+        if (bigVs.isEmpty()) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(FEED_KEY + userId, 0, max, offset, size);
+            return tuples == null ? Collections.emptyList() : new ArrayList<>(tuples);
+        }
+        List<String> keys = new ArrayList<>(bigVs.size() + 1);
+        keys.add(FEED_KEY + userId);
+        for (String bigV : bigVs) {
+            keys.add(FEED_OUTBOX_KEY + bigV);
+        }
+        List<ZSetOperations.TypedTuple<String>> merged = new ArrayList<>();
+        for (String key : keys) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(key, 0, max, 0, offset + size);
+            if (tuples != null) {
+                merged.addAll(tuples);
+            }
+        }
+        // 同一时间戳按 member 倒序，与 ZREVRANGEBYSCORE 的顺序一致，保证翻页稳定
+        return merged.stream()
+                .distinct()
+                .sorted(Comparator.comparing(ZSetOperations.TypedTuple<String>::getScore)
+                        .thenComparing(t -> t.getValue())
+                        .reversed())
+                .skip(offset)
+                .limit(size)
+                .collect(Collectors.toList());
+    }
+
 }
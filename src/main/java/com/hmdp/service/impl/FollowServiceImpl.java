@@ -1,6 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
@@ -10,16 +9,24 @@ import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.UserHolder;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.hmdp.utils.RedisConstants.FOLLOWS_KEY;
+import static com.hmdp.utils.RedisConstants.FOLLOW_FANS_KEY;
+import static com.hmdp.utils.RedisConstants.FOLLOW_FANS_TTL;
+
 /**
  * <p>
  * 服务实现类
@@ -36,6 +43,14 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
     @Resource
     private IUserService userService;
 
+    private static final DefaultRedisScript<Long> INCR_IF_EXISTS_SCRIPT;
+
+    static {
+        INCR_IF_EXISTS_SCRIPT = new DefaultRedisScript<>();
+        INCR_IF_EXISTS_SCRIPT.setLocation(new ClassPathResource("incr_if_exists.lua"));
+        INCR_IF_EXISTS_SCRIPT.setResultType(Long.class);
+    }
+
     /**
      * 关注和取关
      *
@@ -47,7 +62,7 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
     public Result follow(Long followUserId, Boolean isFollow) {
         // 获取登录用户
         Long userId = UserHolder.getUser().getId();
-        String key = "follows:" + userId;
+        String key = FOLLOWS_KEY + userId;
         // 2 关注
         if (isFollow) {
             // 2.1 新增关注数据
@@ -58,6 +73,7 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
             // 2.2 将关注用户的id存入Redis的Set集合
             if (success) {
                 stringRedisTemplate.opsForSet().add(key, followUserId.toString());
+                incrFansCount(followUserId, 1);
             }
         } else {
             // 3 取关
@@ -68,11 +84,36 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
             // 3.2 将关注用户的id从Redis的Set集合移除
             if (success) {
                 stringRedisTemplate.opsForSet().remove(key, followUserId.toString());
+                incrFansCount(followUserId, -1);
             }
         }
         return Result.ok();
     }
 
+    /**
+     * 查询粉丝数，缓存在 Redis 中，关注/取关时增量维护
+     * - 缓存不存在时 COUNT 一次并缓存 FOLLOW_FANS_TTL 天，过期后重新统计，修正增量维护的误差
+     */
+    @Override
+    public int queryFansCount(Long userId) {
+        String key = FOLLOW_FANS_KEY + userId;
+        String cached = stringRedisTemplate.opsForValue().get(key);
+        if (cached != null) {
+            return Integer.parseInt(cached);
+        }
+        int count = query().eq("follow_user_id", userId).count();
+        stringRedisTemplate.opsForValue().setIfAbsent(key, String.valueOf(count), FOLLOW_FANS_TTL, TimeUnit.DAYS);
+        return count;
+    }
+
+    /**
+     * 粉丝数已缓存时增量更新，未缓存时不创建
+     */
+    private void incrFansCount(Long userId, int delta) {
+        stringRedisTemplate.execute(INCR_IF_EXISTS_SCRIPT,
+                Collections.singletonList(FOLLOW_FANS_KEY + userId), String.valueOf(delta));
+    }
+
     /**
      * 判断是否关注了该用户
      *
@@ -102,8 +143,8 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
     public Result followCommon(Long userId2) {
         // 1 获取当前user
         Long userId = UserHolder.getUser().getId();
-        String key = "follows:" + userId;
-        String key2 = "follows:" + userId2;
+        String key = FOLLOWS_KEY + userId;
+        String key2 = FOLLOWS_KEY + userId2;
         // 2 求关注交集
         Set<String> intersectIds = stringRedisTemplate.opsForSet().intersect(key, key2);
         // 2.1 无交集
@@ -114,9 +155,7 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
         // 3 有交集，解析id交集
         List<Long> ids = intersectIds.stream().map(Long::valueOf).collect(Collectors.toList());
         // 4 查询用户并封装
-        List<UserDTO> userDTOS = userService.listByIds(ids).stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
-                .collect(Collectors.toList());
+        List<UserDTO> userDTOS = new ArrayList<>(userService.queryUserDTOByIds(ids).values());
         // 5 返回
         return Result.ok(userDTOS);
     }
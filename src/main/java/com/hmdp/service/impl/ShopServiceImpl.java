@@ -6,31 +6,49 @@ import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
-import com.hmdp.entity.Blog;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.ShopDetailDTO;
+import com.hmdp.dto.ShopSuggestDTO;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.service.IVoucherService;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ShopSuggestTrie;
+import com.hmdp.utils.SimpleRedisLock;
 import com.hmdp.utils.SystemConstants;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
 import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.DefaultTypedTuple;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.domain.geo.GeoReference;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.Executor;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -42,18 +60,84 @@ import static com.hmdp.utils.RedisConstants.*;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
     @Resource
     StringRedisTemplate stringRedisTemplate;
     @Resource
     private CacheClient cacheClient;
+    @Resource
+    private IShopTypeService shopTypeService;
+    @Resource
+    private IVoucherService voucherService;
 
     // 线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private ExecutorService cacheRebuildExecutor;
+    // 店铺详情并行查询线程池
+    @Resource
+    private ExecutorService queryExecutor;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 店铺名联想前缀树：店铺名新增/修改时通过发布订阅通知所有节点后台重建，并定时重建跟上销量、评分的变化
+    private volatile ShopSuggestTrie suggestTrie;
+    // 是否已有排队中的重建任务，合并短时间内的多次通知
+    private final AtomicBoolean suggestRebuildQueued = new AtomicBoolean();
+    // 重建串行执行，后开始的重建一定后完成，不会被读到旧数据的重建覆盖
+    private final Object suggestLock = new Object();
+
+    @PostConstruct
+    public void init() {
+        // 订阅店铺名变更消息，后台重建前缀树
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> rebuildSuggestTrieAsync(),
+                new ChannelTopic(SHOP_SUGGEST_CHANNEL));
+    }
 
     @Override
     public Result queryShopById(Long id) {
+        Shop shop = queryShop(id);
+        if (shop == null) {
+            return Result.fail("商铺不存在");
+        }
+        return Result.ok(shop);
+    }
+
+    /**
+     * 店铺详情：店铺信息、类型名称、优惠券（含实时库存）一次返回
+     * - 店铺和优惠券并行查询，类型名称在店铺查到后查询
+     */
+    @Override
+    public Result queryShopDetail(Long id) {
+        // 1 并行查询店铺、优惠券
+        CompletableFuture<Shop> shopFuture =
+                CompletableFuture.supplyAsync(() -> queryShop(id), queryExecutor);
+        CompletableFuture<List<Voucher>> voucherFuture =
+                CompletableFuture.supplyAsync(() -> voucherService.queryVoucherListOfShop(id), queryExecutor);
+        // 2 店铺查到后查询类型名称
+        CompletableFuture<String> typeNameFuture = shopFuture.thenApplyAsync(shop -> {
+            if (shop == null || shop.getTypeId() == null) {
+                return null;
+            }
+            ShopType type = shopTypeService.queryTypeById(shop.getTypeId());
+            return type == null ? null : type.getName();
+        }, queryExecutor);
+        // 3 等待全部完成
+        Shop shop = shopFuture.join();
+        if (shop == null) {
+            return Result.fail("商铺不存在");
+        }
+        ShopDetailDTO detail = new ShopDetailDTO();
+        detail.setShop(shop);
+        detail.setTypeName(typeNameFuture.join());
+        detail.setVouchers(voucherFuture.join());
+        return Result.ok(detail);
+    }
+
+    private Shop queryShop(Long id) {
         // 解决缓存穿透
         Shop shop = cacheClient.queryWithPassThrough(
                 CACHE_SHOP_KEY,
@@ -78,11 +162,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 //                CACHE_SHOP_TTL,
 //                TimeUnit.MINUTES
 //        );
-
-        if (shop == null) {
-            return Result.fail("商铺不存在");
-        }
-        return Result.ok(shop);
+        return shop;
     }
 
     // 重建缓存
@@ -146,6 +226,20 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     }
 
 
+    @Override
+    public Result saveShop(Shop shop) {
+        // 写入数据库
+        save(shop);
+        // 通知所有节点重建前缀树
+        if (StrUtil.isNotBlank(shop.getName())) {
+            publishSuggestChange();
+        }
+        // 加入分类排行榜
+        updateShopRank(shop);
+        // 返回店铺id
+        return Result.ok(shop.getId());
+    }
+
     @Override
     @Transactional
     public Result updateShop(Shop shop) {
@@ -153,13 +247,249 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if (shopId == null) {
             return Result.fail("店铺id不能为空");
         }
+        // 修改类型或名称时查询原值：类型变化需要从原类型的排行榜中移除，名称变化需要重建前缀树
+        Shop old = null;
+        if (shop.getTypeId() != null || shop.getName() != null) {
+            old = query().select("id", "type_id", "name").eq("id", shopId).one();
+        }
         // 1 更新数据库
         updateById(shop);
         // 2 删除缓存
         stringRedisTemplate.delete(CACHE_SHOP_KEY + shopId);
+        // 3 名称变化时通知所有节点重建前缀树，只改销量、评分时由定时重建更新
+        if (old != null && shop.getName() != null && !shop.getName().equals(old.getName())) {
+            publishSuggestChange();
+        }
+        // 4 类型、销量、评分变化时更新分类排行榜
+        Long oldTypeId = old == null ? null : old.getTypeId();
+        boolean typeChanged = shop.getTypeId() != null && oldTypeId != null && !oldTypeId.equals(shop.getTypeId());
+        if (typeChanged) {
+            String id = shopId.toString();
+            stringRedisTemplate.opsForZSet().remove(SHOP_RANK_SOLD_KEY + oldTypeId, id);
+            stringRedisTemplate.opsForZSet().remove(SHOP_RANK_SCORE_KEY + oldTypeId, id);
+        }
+        if (typeChanged || shop.getSold() != null || shop.getScore() != null) {
+            updateShopRank(getById(shopId));
+        }
         return Result.ok();
     }
 
+    /**
+     * 分类排行榜，按销量或评分滚动分页
+     * - 排行榜是按类型维护的 ZSET，查询为 O(log N)，不对 tb_shop 做 ORDER BY
+     *
+     * @param max    上一页最小分数
+     * @param offset 与最小分数相同的元素个数，需要跳过
+     */
+    @Override
+    public Result queryShopRankOfType(Long typeId, String sortBy, Long max, Integer offset) {
+        String key = shopRankKey(sortBy, typeId);
+        long maxScore = max == null ? Long.MAX_VALUE : max;
+        // 1 查询排行榜
+        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet()
+                .reverseRangeByScoreWithScores(key, 0, maxScore, offset, SystemConstants.DEFAULT_PAGE_SIZE);
+        if ((typedTuples == null || typedTuples.isEmpty())
+                && max == null && BooleanUtil.isFalse(stringRedisTemplate.hasKey(key))) {
+            // 该类型没有店铺，已缓存空标记，不再查询数据库
+            String emptyKey = SHOP_RANK_EMPTY_KEY + typeId;
+            if (BooleanUtil.isTrue(stringRedisTemplate.hasKey(emptyKey))) {
+                return Result.ok();
+            }
+            // 排行榜还未构建，先构建该类型的排行榜
+            List<Shop> shops = query().select("id", "type_id", "sold", "score").eq("type_id", typeId).list();
+            if (shops.isEmpty()) {
+                stringRedisTemplate.opsForValue().set(emptyKey, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                return Result.ok();
+            }
+            rebuildShopRank(typeId, shops);
+            typedTuples = stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(key, 0, maxScore, offset, SystemConstants.DEFAULT_PAGE_SIZE);
+        }
+        if (typedTuples == null || typedTuples.isEmpty()) {
+            return Result.ok();
+        }
+        // 2 解析id、最小分数和偏移量
+        List<Long> shopIds = new ArrayList<>(typedTuples.size());
+        long minScore = typedTuples.iterator().next().getScore().longValue();
+        int os = 0;
+        for (ZSetOperations.TypedTuple<String> typedTuple : typedTuples) {
+            shopIds.add(Long.valueOf(typedTuple.getValue()));
+            long score = typedTuple.getScore().longValue();
+            if (score == minScore) {
+                os++;
+            } else {
+                minScore = score;
+                os = 1;
+            }
+        }
+        // 与上一页最小分数相同，偏移量需要累加
+        if (max != null && minScore == max) {
+            os += offset;
+        }
+        // 3 根据id查询店铺
+        String strIds = StrUtil.join(",", shopIds);
+        List<Shop> shops = query().in("id", shopIds).last("ORDER BY FIELD(id," + strIds + ")").list();
+        // 4 封装返回
+        ScrollResult r = new ScrollResult();
+        r.setList(shops);
+        r.setMinTime(minScore);
+        r.setOffset(os);
+        return Result.ok(r);
+    }
+
+    /**
+     * 定时全量重建分类排行榜，修正增量更新遗漏的数据
+     * - 分布式锁保证只有一个节点执行
+     */
+    @Scheduled(initialDelay = 60 * 1000, fixedDelay = 60 * 60 * 1000)
+    public void rebuildShopRank() {
+        SimpleRedisLock lock = new SimpleRedisLock("shop:rank:rebuild", stringRedisTemplate);
+        if (!lock.tryLock(300)) {
+            return;
+        }
+        try {
+            List<Shop> shops = query().select("id", "type_id", "sold", "score").list();
+            // 没有类型的店铺不参与排行
+            Map<Long, List<Shop>> shopMap = shops.stream()
+                    .filter(shop -> shop.getTypeId() != null)
+                    .collect(Collectors.groupingBy(Shop::getTypeId));
+            for (Map.Entry<Long, List<Shop>> entry : shopMap.entrySet()) {
+                rebuildShopRank(entry.getKey(), entry.getValue());
+            }
+            log.debug("分类排行榜重建完成，类型数：{}", shopMap.size());
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 重建某个类型的排行榜：先写临时key，再 RENAME 覆盖，读请求不会看到半成品
+     */
+    private void rebuildShopRank(Long typeId, List<Shop> shops) {
+        if (shops.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> soldTuples = new HashSet<>(shops.size());
+        Set<ZSetOperations.TypedTuple<String>> scoreTuples = new HashSet<>(shops.size());
+        for (Shop shop : shops) {
+            String id = shop.getId().toString();
+            soldTuples.add(new DefaultTypedTuple<>(id, shop.getSold() == null ? 0D : shop.getSold()));
+            scoreTuples.add(new DefaultTypedTuple<>(id, shop.getScore() == null ? 0D : shop.getScore()));
+        }
+        replaceZSet(SHOP_RANK_SOLD_KEY + typeId, soldTuples);
+        replaceZSet(SHOP_RANK_SCORE_KEY + typeId, scoreTuples);
+    }
+
+    private void replaceZSet(String key, Set<ZSetOperations.TypedTuple<String>> tuples) {
+        String tmpKey = key + ":tmp";
+        stringRedisTemplate.delete(tmpKey);
+        stringRedisTemplate.opsForZSet().add(tmpKey, tuples);
+        stringRedisTemplate.rename(tmpKey, key);
+    }
+
+    /**
+     * 增量更新单个店铺在分类排行榜中的分数
+     */
+    private void updateShopRank(Shop shop) {
+        if (shop == null || shop.getTypeId() == null) {
+            return;
+        }
+        String id = shop.getId().toString();
+        if (shop.getSold() != null) {
+            stringRedisTemplate.opsForZSet().add(SHOP_RANK_SOLD_KEY + shop.getTypeId(), id, shop.getSold());
+        }
+        if (shop.getScore() != null) {
+            stringRedisTemplate.opsForZSet().add(SHOP_RANK_SCORE_KEY + shop.getTypeId(), id, shop.getScore());
+        }
+    }
+
+    private String shopRankKey(String sortBy, Long typeId) {
+        return ("score".equals(sortBy) ? SHOP_RANK_SCORE_KEY : SHOP_RANK_SOLD_KEY) + typeId;
+    }
+
+    /**
+     * 店铺名称输入联想，按销量、评分取前缀匹配的 topK
+     * - 查询只走内存中的前缀树，不访问 MySQL 和 Redis
+     *
+     * @param prefix 用户已输入的前缀
+     * @param limit  返回条数
+     */
+    @Override
+    public Result suggestShop(String prefix, Integer limit) {
+        if (StrUtil.isBlank(prefix)) {
+            return Result.ok(Collections.emptyList());
+        }
+        int n = limit == null || limit <= 0
+                ? SystemConstants.DEFAULT_PAGE_SIZE
+                : Math.min(limit, SystemConstants.SHOP_SUGGEST_TOP_K);
+        List<ShopSuggestDTO> list = getSuggestTrie().suggest(prefix, n);
+        return Result.ok(list);
+    }
+
+    private ShopSuggestTrie getSuggestTrie() {
+        ShopSuggestTrie trie = suggestTrie;
+        if (trie != null) {
+            return trie;
+        }
+        // 只有本节点第一次查询时同步构建，之后都在后台重建，查询继续使用旧的前缀树
+        synchronized (suggestLock) {
+            if (suggestTrie == null) {
+                rebuildSuggestTrie();
+            }
+            return suggestTrie;
+        }
+    }
+
+    private void rebuildSuggestTrie() {
+        synchronized (suggestLock) {
+            // 只查询构建需要的列
+            List<Shop> shops = query().select("id", "name", "sold", "score").list();
+            suggestTrie = ShopSuggestTrie.build(shops, SystemConstants.SHOP_SUGGEST_TOP_K);
+        }
+    }
+
+    /**
+     * 收到店铺名变更通知：后台重建前缀树，还未构建过的节点等第一次查询时构建
+     */
+    private void rebuildSuggestTrieAsync() {
+        if (suggestTrie == null || !suggestRebuildQueued.compareAndSet(false, true)) {
+            return;
+        }
+        cacheRebuildExecutor.execute(() -> {
+            // 开始重建前清除标记，重建期间的新通知会再排队一次重建
+            suggestRebuildQueued.set(false);
+            try {
+                rebuildSuggestTrie();
+            } catch (Exception e) {
+                log.error("店铺名前缀树重建失败", e);
+            }
+        });
+    }
+
+    /**
+     * 定时重建前缀树，联想结果的销量、评分排序随之更新
+     */
+    @Scheduled(initialDelay = 10 * 60 * 1000, fixedDelay = 10 * 60 * 1000)
+    public void refreshSuggestTrie() {
+        rebuildSuggestTrieAsync();
+    }
+
+    /**
+     * 店铺名新增或修改：事务提交后广播，所有节点（包括本节点）收到后重建前缀树
+     */
+    private void publishSuggestChange() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            stringRedisTemplate.convertAndSend(SHOP_SUGGEST_CHANNEL, "1");
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                stringRedisTemplate.convertAndSend(SHOP_SUGGEST_CHANNEL, "1");
+            }
+        });
+    }
+
     /**
      * 根据商铺类型分页查询商铺信息
      *
@@ -265,7 +595,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         boolean isLock = tryLock(LOCK_SHOP_KEY + id);
         if (isLock) {
             // 开启独立线程重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+            cacheRebuildExecutor.submit(() -> {
                 try {
                     this.saveShopToRedis(id, 20L);
                 } catch (InterruptedException e) {
@@ -4,8 +4,15 @@ import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_TTL;
+
 /**
  * <p>
  *  服务实现类
@@ -16,5 +23,21 @@ import org.springframework.stereotype.Service;
  */
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
+    @Resource
+    private CacheClient cacheClient;
 
+    /**
+     * 根据id查询店铺类型，类型数据几乎不变，走缓存
+     */
+    @Override
+    public ShopType queryTypeById(Long id) {
+        return cacheClient.queryWithPassThrough(
+                CACHE_SHOP_TYPE_KEY,
+                id,
+                ShopType.class,
+                this::getById,
+                CACHE_SHOP_TYPE_TTL,
+                TimeUnit.MINUTES
+        );
+    }
 }
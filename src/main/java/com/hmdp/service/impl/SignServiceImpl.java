@@ -0,0 +1,179 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.entity.Sign;
+import com.hmdp.mapper.SignMapper;
+import com.hmdp.service.ISignService;
+import com.hmdp.utils.SimpleRedisLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.USER_SIGN_KEY;
+
+/**
+ * <p>
+ * 签到记录归档
+ * - 每月把上月的签到位图写入 tb_sign，一个用户一个月一行，签到记录压缩为一个 int
+ * - 归档后 Redis 中的位图过期删除，查询历史月份时从 MySQL 读取，并缓存在本地
+ * </p>
+ */
+@Slf4j
+@Service
+public class SignServiceImpl extends ServiceImpl<SignMapper, Sign> implements ISignService {
+
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final int ARCHIVE_BATCH_SIZE = 500;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    // userId:yyyyMM -> 归档的签到记录，归档后不再变化，没有归档记录的缓存为0
+    private final LRUCache<String, Integer> archivedCache = CacheUtil.newLRUCache(100000, TimeUnit.HOURS.toMillis(1));
+
+    /**
+     * 每月8号归档上月签到记录（补签只能补最近7天，8号之后上月数据不再变化）
+     */
+    @Scheduled(cron = "0 30 3 8 * ?")
+    public void archiveLastMonth() {
+        SimpleRedisLock lock = new SimpleRedisLock("sign:archive", stringRedisTemplate);
+        if (!lock.tryLock(3600)) {
+            return;
+        }
+        try {
+            archiveMonth(YearMonth.now().minusMonths(1));
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 归档某月的签到位图
+     * - SCAN sign:*:yyyyMM 分批处理，每批一个 pipeline 读取 BITFIELD，一条 INSERT 批量写入
+     * - 写入成功后给位图设置过期时间，留一天给正在进行的查询
+     */
+    @Override
+    public void archiveMonth(YearMonth month) {
+        String suffix = ":" + month.format(MONTH_FORMATTER);
+        ScanOptions options = ScanOptions.scanOptions().match(USER_SIGN_KEY + "*" + suffix).count(1000).build();
+        Integer total = stringRedisTemplate.execute((RedisCallback<Integer>) connection -> {
+            int count = 0;
+            List<String> keys = new ArrayList<>(ARCHIVE_BATCH_SIZE);
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (cursor.hasNext()) {
+                    keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                    if (keys.size() >= ARCHIVE_BATCH_SIZE) {
+                        count += archiveBatch(keys, month, suffix);
+                        keys.clear();
+                    }
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("签到归档失败：" + month, e);
+            }
+            if (!keys.isEmpty()) {
+                count += archiveBatch(keys, month, suffix);
+            }
+            return count;
+        });
+        log.info("签到归档完成：{}，用户数：{}", month, total);
+    }
+
+    private int archiveBatch(List<String> keys, YearMonth month, String suffix) {
+        int len = month.lengthOfMonth();
+        // 1 批量读取位图
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : keys) {
+                conn.bitfield(key, BitFieldSubCommands.create()
+                        .get(BitFieldSubCommands.BitFieldType.unsigned(len))
+                        .valueAt(0));
+            }
+            return null;
+        });
+        // 2 转换为归档记录
+        List<Sign> signs = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            @SuppressWarnings("unchecked")
+            List<Long> r = (List<Long>) results.get(i);
+            long bits = r == null || r.isEmpty() || r.get(0) == null ? 0 : r.get(0);
+            if (bits == 0) {
+                continue;
+            }
+            String key = keys.get(i);
+            Long userId = Long.valueOf(key.substring(USER_SIGN_KEY.length(), key.length() - suffix.length()));
+            signs.add(new Sign()
+                    .setUserId(userId)
+                    .setYear(month.getYear())
+                    .setMonth(month.getMonthValue())
+                    .setBits(UserServiceImpl.toDayMask(bits, len)));
+        }
+        // 3 批量写入，成功后位图过期
+        if (!signs.isEmpty()) {
+            getBaseMapper().insertBatch(signs);
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : keys) {
+                conn.expire(key, TimeUnit.DAYS.toSeconds(1));
+            }
+            return null;
+        });
+        return signs.size();
+    }
+
+    /**
+     * 查询已归档月份的签到记录，返回按天的掩码（第 d 位为 d+1 号），未归档的月份为0
+     */
+    @Override
+    public Map<YearMonth, Integer> queryArchivedBits(Long userId, Collection<YearMonth> months) {
+        Map<YearMonth, Integer> result = new HashMap<>(months.size());
+        List<YearMonth> misses = new ArrayList<>();
+        // 1 先查本地缓存
+        for (YearMonth month : months) {
+            Integer bits = archivedCache.get(userId + ":" + month.format(MONTH_FORMATTER));
+            if (bits != null) {
+                result.put(month, bits);
+            } else {
+                misses.add(month);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+        // 2 未命中的月份一次查询
+        Map<YearMonth, Integer> loaded = new HashMap<>(misses.size());
+        query().eq("user_id", userId)
+                .and(w -> {
+                    for (YearMonth month : misses) {
+                        w.or(o -> o.eq("year", month.getYear()).eq("month", month.getMonthValue()));
+                    }
+                })
+                .list()
+                .forEach(sign -> loaded.put(YearMonth.of(sign.getYear(), sign.getMonth()), sign.getBits()));
+        for (YearMonth month : misses) {
+            int bits = loaded.getOrDefault(month, 0);
+            archivedCache.put(userId + ":" + month.format(MONTH_FORMATTER), bits);
+            result.put(month, bits);
+        }
+        return result;
+    }
+}
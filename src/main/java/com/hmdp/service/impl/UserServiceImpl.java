@@ -1,33 +1,48 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.SignCalendarDTO;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
+import com.hmdp.service.ISignService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.ActiveUserRecorder;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.TokenManager;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.SIGN_MAKEUP_DAYS;
+import static com.hmdp.utils.SystemConstants.SIGN_MAKEUP_MAX_PER_MONTH;
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 
 /**
@@ -43,6 +58,26 @@ import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
     @Resource
     StringRedisTemplate stringRedisTemplate;
+    @Resource
+    TokenManager tokenManager;
+    @Resource
+    ISignService signService;
+    @Resource
+    ActiveUserRecorder activeUserRecorder;
+
+    // 用户资料本地缓存（L1），写入后固定时间过期，用于兜底其它节点修改资料后的不一致
+    private static final int USER_L1_CAPACITY = 10000;
+    private static final long USER_L1_TTL_MILLIS = 60 * 1000L;
+    private final LRUCache<Long, UserDTO> userL1Cache = CacheUtil.newLRUCache(USER_L1_CAPACITY, USER_L1_TTL_MILLIS);
+
+    // 手机号 -> 用户id 本地缓存，以及正在查询或创建用户的手机号
+    private final LRUCache<String, Long> phoneL1Cache = CacheUtil.newLRUCache(USER_L1_CAPACITY, TimeUnit.MINUTES.toMillis(10));
+    private final Map<String, CompletableFuture<Long>> phoneLoading = new ConcurrentHashMap<>();
+
+    private static final DateTimeFormatter SIGN_MONTH_FORMATTER = DateTimeFormatter.ofPattern(":yyyyMM");
+    // 统计连续签到时每次读取的月数，以及最多往前统计的月数
+    private static final int SIGN_STREAK_BATCH_MONTHS = 3;
+    private static final int SIGN_STREAK_MAX_MONTHS = 120;
 
     @Override
     public Result sendCode(String phone) {
@@ -71,33 +106,83 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             return Result.fail("验证码错误！");
         }
         // 获取用户（不存在就创建）
-        User user = query().eq("phone", phone).one();
-        if (user == null) {
-            user = createUserWithPhone(phone);
-        }
-        // 保存用户信息到Redis，key=token, value=userMap
-        // 1、key
-        String token = UUID.randomUUID().toString();
-        String tokenKey = LOGIN_USER_KEY + token;
-        // 2、value
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
-        // userDTO的id是Long类型，String序列化会报错
-        // BeanUtil是hutool工具包
-        Map<String, Object> userMap = BeanUtil.beanToMap(
-                userDTO,
-                new HashMap<>(),
-                CopyOptions.create()
-                        // 是否忽略空字段
-                        .setIgnoreNullValue(true)
-                        // 自定义属性值转换规则
-                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString())
-        );
-        // 3、保存
-        stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
-        stringRedisTemplate.expire(tokenKey, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        Long userId = queryOrCreateUserId(phone);
+        UserDTO userDTO = queryUserDTOById(userId);
+        if (userDTO == null) {
+            return Result.fail("用户不存在！");
+        }
+        // 签发token：默认保存到Redis，开启 hmdp.token.stateless 时为签名 token
+        String token = tokenManager.createToken(userDTO);
+        // 记录最近活跃时间
+        activeUserRecorder.record(userId);
         return Result.ok(token);
     }
 
+    /**
+     * 根据手机号查询用户id，用户不存在时创建
+     * - 依次查询 本地缓存 -> Redis -> MySQL，手机号与用户id的对应关系不会变化，缓存时间较长
+     * - 本节点同一手机号的并发请求只有一个线程查询、创建，其它线程等待结果
+     */
+    private Long queryOrCreateUserId(String phone) {
+        Long userId = phoneL1Cache.get(phone);
+        if (userId != null) {
+            return userId;
+        }
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        CompletableFuture<Long> loading = phoneLoading.putIfAbsent(phone, future);
+        if (loading != null) {
+            return loading.join();
+        }
+        try {
+            userId = loadOrCreateUserId(phone);
+            phoneL1Cache.put(phone, userId);
+            future.complete(userId);
+            return userId;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            phoneLoading.remove(phone, future);
+        }
+    }
+
+    private Long loadOrCreateUserId(String phone) {
+        String key = CACHE_USER_PHONE_KEY + phone;
+        // 1 查询 Redis
+        String cached = stringRedisTemplate.opsForValue().get(key);
+        if (StrUtil.isNotBlank(cached)) {
+            return Long.valueOf(cached);
+        }
+        // 2 查询数据库，只查id
+        User user = query().select("id").eq("phone", phone).one();
+        Long userId;
+        if (user != null) {
+            userId = user.getId();
+        } else {
+            // 3 不存在则创建，其它节点同时创建时唯一索引冲突，改为查询已创建的用户
+            try {
+                userId = createUserWithPhone(phone).getId();
+            } catch (DuplicateKeyException e) {
+                userId = query().select("id").eq("phone", phone).one().getId();
+            }
+            // 新用户的id可能已被缓存为不存在，删除
+            evictUserCache(userId);
+        }
+        stringRedisTemplate.opsForValue().set(key, userId.toString(), CACHE_USER_PHONE_TTL, TimeUnit.DAYS);
+        return userId;
+    }
+
+    /**
+     * 登出：吊销token，并通知所有节点删除本地会话缓存
+     */
+    @Override
+    public Result logout(String token) {
+        if (StrUtil.isNotBlank(token)) {
+            tokenManager.revoke(token);
+        }
+        return Result.ok();
+    }
+
     /**
      * 用户签到
      *
@@ -108,59 +193,192 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         // 1 获取当前登录用户
         Long userId = UserHolder.getUser().getId();
         // 2 获取日期
-        LocalDateTime now = LocalDateTime.now();
+        LocalDate now = LocalDate.now();
         // 3 拼接key：前缀+userId+年月
-        String keySuffix = now.format(DateTimeFormatter.ofPattern(":yyyyMM"));
-        String key = USER_SIGN_KEY + userId + keySuffix;
+        String key = signKey(userId, YearMonth.from(now));
         // 4 获取今天是本月的第几天
         int dayOfMonth = now.getDayOfMonth();
         // 5 写入Redis：SETBIT key offset 1
         stringRedisTemplate.opsForValue().setBit(key, dayOfMonth - 1, true);
+        // 6 连续签到天数缓存失效
+        stringRedisTemplate.delete(USER_SIGN_STREAK_KEY + userId);
+        return Result.ok();
+    }
+
+    /**
+     * 补签：只能补最近 SIGN_MAKEUP_DAYS 天，每月最多 SIGN_MAKEUP_MAX_PER_MONTH 次
+     */
+    @Override
+    public Result makeupSign(LocalDate date) {
+        Long userId = UserHolder.getUser().getId();
+        LocalDate today = LocalDate.now();
+        // 1 校验日期
+        if (!date.isBefore(today) || date.isBefore(today.minusDays(SIGN_MAKEUP_DAYS))) {
+            return Result.fail("只能补签最近" + SIGN_MAKEUP_DAYS + "天！");
+        }
+        // 2 扣减本月补签次数
+        String makeupKey = USER_SIGN_MAKEUP_KEY + userId + today.format(SIGN_MONTH_FORMATTER);
+        Long times = stringRedisTemplate.opsForValue().increment(makeupKey);
+        stringRedisTemplate.expire(makeupKey, 32, TimeUnit.DAYS);
+        if (times == null || times > SIGN_MAKEUP_MAX_PER_MONTH) {
+            stringRedisTemplate.opsForValue().decrement(makeupKey);
+            return Result.fail("本月补签次数已用完！");
+        }
+        // 3 补签，SETBIT 返回原来的值，已签到时退回补签次数
+        Boolean signed = stringRedisTemplate.opsForValue()
+                .setBit(signKey(userId, YearMonth.from(date)), date.getDayOfMonth() - 1, true);
+        if (BooleanUtil.isTrue(signed)) {
+            stringRedisTemplate.opsForValue().decrement(makeupKey);
+            return Result.fail("该日已签到！");
+        }
+        stringRedisTemplate.delete(USER_SIGN_STREAK_KEY + userId);
         return Result.ok();
     }
 
     /**
-     * 统计签到天数
+     * 统计连续签到天数，可跨月
+     * - 今天还没签到时，统计截止到昨天的连续天数
+     * - 结果缓存到当天结束，签到、补签时删除
      */
     @Override
     public Result signCount() {
         // 获取当前登录用户
         Long userId = UserHolder.getUser().getId();
-        LocalDateTime now = LocalDateTime.now();
-        // key：前缀+userId+年月
-        String keySuffix = now.format(DateTimeFormatter.ofPattern(":yyyyMM"));
-        String key = USER_SIGN_KEY + userId + keySuffix;
-        int dayOfMonth = now.getDayOfMonth();
-        // 获取本月截止到今天的所有签到记录，返回的是一个10进制数字
-        // BITFIELD sign:5:202203 GET u14
-        List<Long> result = stringRedisTemplate.opsForValue().bitField(
-                key,
-                BitFieldSubCommands.create() // 这里采用批量执行命令的方式
-                        .get(BitFieldSubCommands.BitFieldType.unsigned(dayOfMonth)) // 无符号、截止到dayOfMonth
-                        .valueAt(0) // 从角标0开始
-        );
-        if (result == null || result.isEmpty()) {
-            return Result.ok(0);
-        }
-        Long num = result.get(0);
-        if (num == null || num == 0) {
-            // 十进制0代表没签到
-            return Result.ok(0);
-        }
-        // 6 获取连续签到天数
-        int count = 0;
-        while (true) {
-            // 和1做与运算，得到数字最后一个bit位
-            if ((num & 1) == 0) {
-                // 最后一位为0，改天未签到
-                break;
-            } else {
-                count++;
+        String cacheKey = USER_SIGN_STREAK_KEY + userId;
+        String cached = stringRedisTemplate.opsForValue().get(cacheKey);
+        if (cached != null) {
+            return Result.ok(Integer.valueOf(cached));
+        }
+        LocalDate today = LocalDate.now();
+        int streak = countStreak(userId, today);
+        long ttl = Duration.between(LocalDateTime.now(), today.plusDays(1).atStartOfDay()).getSeconds();
+        stringRedisTemplate.opsForValue().set(cacheKey, String.valueOf(streak), Math.max(ttl, 1), TimeUnit.SECONDS);
+        return Result.ok(streak);
+    }
+
+    /**
+     * 从今天往前逐月统计连续签到天数
+     * - 每次 pipeline 读取 SIGN_STREAK_BATCH_MONTHS 个月，每月一条 BITFIELD GET
+     * - BITFIELD GET u{n} 的结果中最低位是第 n 天，连续签到天数即末尾连续 1 的个数：
+     *   Long.numberOfTrailingZeros(~bits)，一次算完一个月，不必逐位循环
+     * - 某月末尾连续 1 的个数小于读取的天数，说明连续签到在这个月中断
+     */
+    private int countStreak(Long userId, LocalDate today) {
+        int streak = 0;
+        YearMonth month = YearMonth.from(today);
+        boolean first = true;
+        for (int m = 0; m < SIGN_STREAK_MAX_MONTHS; m += SIGN_STREAK_BATCH_MONTHS) {
+            // 1 本批次的月份和各月读取的天数：本月截止到今天，之前的月份读整月
+            List<YearMonth> months = new ArrayList<>(SIGN_STREAK_BATCH_MONTHS);
+            int[] lens = new int[SIGN_STREAK_BATCH_MONTHS];
+            for (int i = 0; i < SIGN_STREAK_BATCH_MONTHS; i++) {
+                YearMonth ym = month.minusMonths(m + i);
+                months.add(ym);
+                lens[i] = m + i == 0 ? today.getDayOfMonth() : ym.lengthOfMonth();
+            }
+            long[] bits = querySignBits(userId, months, lens);
+            // 2 逐月累加
+            for (int i = 0; i < months.size(); i++) {
+                long v = bits[i];
+                int len = lens[i];
+                if (first) {
+                    first = false;
+                    if ((v & 1) == 0) {
+                        // 今天还没签到，从昨天开始统计
+                        v >>>= 1;
+                        len--;
+                    }
+                }
+                int ones = len == 0 ? 0 : Math.min(Long.numberOfTrailingZeros(~v), len);
+                streak += ones;
+                if (ones < len) {
+                    return streak;
+                }
             }
-            // 右移，到前一天
-            num >>>= 1;
         }
-        return Result.ok(count);
+        return streak;
+    }
+
+    /**
+     * 查询一年的签到日历和每月签到天数
+     */
+    @Override
+    public Result querySignCalendar(Integer year) {
+        Long userId = UserHolder.getUser().getId();
+        List<YearMonth> months = new ArrayList<>(12);
+        int[] lens = new int[12];
+        for (int i = 0; i < 12; i++) {
+            YearMonth ym = YearMonth.of(year, i + 1);
+            months.add(ym);
+            lens[i] = ym.lengthOfMonth();
+        }
+        long[] bits = querySignBits(userId, months, lens);
+        List<Integer> masks = new ArrayList<>(12);
+        List<Integer> counts = new ArrayList<>(12);
+        int total = 0;
+        for (int i = 0; i < 12; i++) {
+            int mask = toDayMask(bits[i], lens[i]);
+            int count = Integer.bitCount(mask);
+            masks.add(mask);
+            counts.add(count);
+            total += count;
+        }
+        SignCalendarDTO calendar = new SignCalendarDTO();
+        calendar.setYear(year);
+        calendar.setMonths(masks);
+        calendar.setMonthCounts(counts);
+        calendar.setTotal(total);
+        return Result.ok(calendar);
+    }
+
+    /**
+     * pipeline 批量读取多个月的签到位图，每月一条 BITFIELD GET u{lens[i]} 0
+     * - 之前月份的位图归档后会从 Redis 删除，读到0时再查归档记录
+     */
+    private long[] querySignBits(Long userId, List<YearMonth> months, int[] lens) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < months.size(); i++) {
+                conn.bitfield(signKey(userId, months.get(i)), BitFieldSubCommands.create()
+                        .get(BitFieldSubCommands.BitFieldType.unsigned(Math.max(lens[i], 1)))
+                        .valueAt(0));
+            }
+            return null;
+        });
+        long[] bits = new long[months.size()];
+        YearMonth current = YearMonth.now();
+        List<YearMonth> archived = new ArrayList<>();
+        for (int i = 0; i < bits.length; i++) {
+            @SuppressWarnings("unchecked")
+            List<Long> r = (List<Long>) results.get(i);
+            bits[i] = r == null || r.isEmpty() || r.get(0) == null ? 0 : r.get(0);
+            if (bits[i] == 0 && months.get(i).isBefore(current)) {
+                archived.add(months.get(i));
+            }
+        }
+        if (!archived.isEmpty()) {
+            Map<YearMonth, Integer> masks = signService.queryArchivedBits(userId, archived);
+            for (int i = 0; i < bits.length; i++) {
+                Integer mask = masks.get(months.get(i));
+                if (mask != null && mask != 0) {
+                    // 归档的是按天的掩码，转换回 BITFIELD 的位序
+                    bits[i] = toDayMask(mask, lens[i]) & 0xFFFFFFFFL;
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * BITFIELD 读出的 len 位数字（最高位是1号）转换为按天的掩码（第 d 位是 d+1 号）
+     * - 即低 len 位逆序，再调用一次即可转换回来
+     */
+    static int toDayMask(long bits, int len) {
+        return Integer.reverse((int) bits) >>> (32 - len);
+    }
+
+    private static String signKey(Long userId, YearMonth month) {
+        return USER_SIGN_KEY + userId + month.format(SIGN_MONTH_FORMATTER);
     }
 
     private User createUserWithPhone(String phone) {
@@ -172,4 +390,98 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return user;
     }
 
+    /**
+     * 根据id查询用户资料（id、昵称、头像）
+     */
+    @Override
+    public UserDTO queryUserDTOById(Long id) {
+        return queryUserDTOByIds(Collections.singletonList(id)).get(id);
+    }
+
+    /**
+     * 批量查询用户资料，依次查询 本地缓存 -> Redis(MGET) -> MySQL
+     * - 不存在的用户在 Redis 中缓存空值，避免缓存穿透
+     *
+     * @return userId -> UserDTO，不存在的用户不在结果中
+     */
+    @Override
+    public Map<Long, UserDTO> queryUserDTOByIds(Collection<Long> ids) {
+        Map<Long, UserDTO> result = new HashMap<>(ids.size());
+        // 1 查询本地缓存
+        List<Long> l1Misses = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            // 不刷新最后访问时间，过期时间从写入时开始计算，不会因为持续读取而一直不过期
+            UserDTO userDTO = userL1Cache.get(id, false);
+            if (userDTO != null) {
+                result.put(id, userDTO);
+            } else {
+                l1Misses.add(id);
+            }
+        }
+        if (l1Misses.isEmpty()) {
+            return result;
+        }
+        // 2 一次 MGET 查询 Redis
+        List<String> keys = new ArrayList<>(l1Misses.size());
+        for (Long id : l1Misses) {
+            keys.add(CACHE_USER_KEY + id);
+        }
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(keys);
+        List<Long> l2Misses = new ArrayList<>();
+        for (int i = 0; i < l1Misses.size(); i++) {
+            Long id = l1Misses.get(i);
+            String json = jsons == null ? null : jsons.get(i);
+            if (StrUtil.isNotBlank(json)) {
+                UserDTO userDTO = JSONUtil.toBean(json, UserDTO.class);
+                userL1Cache.put(id, userDTO);
+                result.put(id, userDTO);
+            } else if (json == null) {
+                l2Misses.add(id);
+            }
+            // 空值""：用户不存在
+        }
+        if (l2Misses.isEmpty()) {
+            return result;
+        }
+        // 3 查询数据库，并用 pipeline 回写 Redis
+        Map<String, String> toCache = new HashMap<>(l2Misses.size());
+        for (User user : listByIds(l2Misses)) {
+            UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+            userL1Cache.put(user.getId(), userDTO);
+            result.put(user.getId(), userDTO);
+            toCache.put(CACHE_USER_KEY + user.getId(), JSONUtil.toJsonStr(userDTO));
+        }
+        for (Long id : l2Misses) {
+            toCache.putIfAbsent(CACHE_USER_KEY + id, "");
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Map.Entry<String, String> entry : toCache.entrySet()) {
+                long ttl = entry.getValue().isEmpty()
+                        ? TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL)
+                        : TimeUnit.MINUTES.toSeconds(CACHE_USER_TTL);
+                conn.setEx(entry.getKey(), ttl, entry.getValue());
+            }
+            return null;
+        });
+        return result;
+    }
+
+    /**
+     * 用户资料变更后删除缓存
+     */
+    @Override
+    public void evictUserCache(Long id) {
+        userL1Cache.remove(id);
+        stringRedisTemplate.delete(CACHE_USER_KEY + id);
+    }
+
+    @Override
+    public boolean updateById(User entity) {
+        boolean success = super.updateById(entity);
+        if (success) {
+            evictUserCache(entity.getId());
+        }
+        return success;
+    }
 }
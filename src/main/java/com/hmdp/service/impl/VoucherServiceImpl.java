@@ -7,15 +7,17 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
-import org.springframework.data.redis.core.RedisTemplate;
+import com.hmdp.utils.CacheClient;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -32,15 +34,67 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private ISeckillVoucherService seckillVoucherService;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheClient cacheClient;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        List<Voucher> vouchers = queryVoucherListOfShop(shopId);
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    /**
+     * 查询店铺的优惠券列表
+     * - 列表走缓存，避免每次执行 LEFT JOIN
+     * - 秒杀券的库存以 Redis 中的实时库存为准
+     */
+    @Override
+    public List<Voucher> queryVoucherListOfShop(Long shopId) {
+        // 1 查询缓存的优惠券列表
+        List<Voucher> vouchers = cacheClient.queryListWithPassThrough(
+                CACHE_VOUCHER_KEY,
+                shopId,
+                Voucher.class,
+                getBaseMapper()::queryVoucherOfShop,
+                CACHE_VOUCHER_TTL,
+                TimeUnit.MINUTES
+        );
+        // 2 找出秒杀券（LEFT JOIN 到秒杀信息的券才有库存）
+        List<Voucher> seckillVouchers = new ArrayList<>();
+        List<String> stockKeys = new ArrayList<>();
+        for (Voucher voucher : vouchers) {
+            if (voucher.getStock() != null) {
+                seckillVouchers.add(voucher);
+                stockKeys.add(SECKILL_STOCK_KEY + voucher.getId());
+            }
+        }
+        if (stockKeys.isEmpty()) {
+            return vouchers;
+        }
+        // 3 一次 MGET 覆盖实时库存
+        List<String> stocks = stringRedisTemplate.opsForValue().multiGet(stockKeys);
+        if (stocks == null) {
+            return vouchers;
+        }
+        for (int i = 0; i < seckillVouchers.size(); i++) {
+            String stock = stocks.get(i);
+            if (stock != null) {
+                seckillVouchers.get(i).setStock(Integer.valueOf(stock));
+            }
+        }
+        return vouchers;
+    }
+
+    @Override
+    public void addVoucher(Voucher voucher) {
+        // 保存优惠券
+        save(voucher);
+        // 删除店铺优惠券列表缓存
+        stringRedisTemplate.delete(CACHE_VOUCHER_KEY + voucher.getShopId());
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -55,5 +109,7 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucherService.save(seckillVoucher);
         // new 保存秒杀券库存信息到Redis中
         stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        // 删除店铺优惠券列表缓存
+        stringRedisTemplate.delete(CACHE_VOUCHER_KEY + voucher.getShopId());
     }
 }
@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_ACTIVE_KEY;
+import static com.hmdp.utils.SystemConstants.FEED_ACTIVE_DAYS;
+
+/**
+ * 用户最近活跃时间（login:active），feed 推送时只推给活跃用户
+ * - 登录时记录；已登录用户的请求，本节点每个用户每小时最多记录一次
+ * - 长期未活跃的用户收件箱已不再更新，回来时删除，feed 改为从 MySQL 读取
+ * - 没有活跃记录的用户（如功能上线前登录、一直未重新登录的）视为活跃
+ */
+@Component
+public class ActiveUserRecorder {
+
+    private static final long TOUCH_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 本节点最近记录过的用户，写入后固定时间过期
+    private final LRUCache<Long, Boolean> touched = CacheUtil.newLRUCache(100000, TOUCH_INTERVAL_MILLIS);
+
+    /**
+     * 已登录用户的请求，节流后记录
+     */
+    public void touch(Long userId) {
+        if (touched.get(userId, false) != null) {
+            return;
+        }
+        record(userId);
+    }
+
+    /**
+     * 记录活跃时间
+     */
+    public void record(Long userId) {
+        touched.put(userId, Boolean.TRUE);
+        long now = System.currentTimeMillis();
+        String member = userId.toString();
+        Double lastActive = stringRedisTemplate.opsForZSet().score(LOGIN_ACTIVE_KEY, member);
+        if (lastActive != null && lastActive < now - TimeUnit.DAYS.toMillis(FEED_ACTIVE_DAYS)) {
+            stringRedisTemplate.delete(FEED_KEY + userId);
+        }
+        stringRedisTemplate.opsForZSet().add(LOGIN_ACTIVE_KEY, member, now);
+    }
+}
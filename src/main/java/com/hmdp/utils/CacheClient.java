@@ -11,8 +11,8 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -23,8 +23,8 @@ import static com.hmdp.utils.RedisConstants.*;
 public class CacheClient {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
-
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private ExecutorService cacheRebuildExecutor;
 
     /**
      * 将对象序列化为 json 并写入缓存，可设置 TTL
@@ -81,6 +81,32 @@ public class CacheClient {
         return r;
     }
 
+    /**
+     * 根据 key 查询列表缓存，并反序列化；
+     * 空列表同样写入缓存（"[]"），避免反复查询 db
+     *
+     * @param type       列表元素类型
+     * @param dbFallback id查询数据库逻辑
+     */
+    public <R, ID> List<R> queryListWithPassThrough(
+            String keyPrefix,
+            ID id,
+            Class<R> type,
+            Function<ID, List<R>> dbFallback,
+            Long time, TimeUnit unit) {
+
+        // 查询缓存
+        String key = keyPrefix + id;
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (StrUtil.isNotBlank(json)) {
+            return JSONUtil.toList(json, type);
+        }
+        // 查询 db
+        List<R> list = dbFallback.apply(id);
+        // 写入 Redis
+        this.set(key, list, time, unit);
+        return list;
+    }
 
     public <R, ID> R queryWithLogicalExpire(
             String keyPrefix,
@@ -110,7 +136,7 @@ public class CacheClient {
         boolean isLock = tryLock(lockKey);
         // ## 获取到锁，开启独立线程重建缓存
         if (isLock) {
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+            cacheRebuildExecutor.submit(() -> {
                 try {
                     // 查数据库
                     R r1 = dbFallback.apply(id);
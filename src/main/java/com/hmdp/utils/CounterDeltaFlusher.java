@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 把 Redis hash 中累计的计数增量（field 为id，value 为增量）批量写回数据库，如点赞数、评论数
+ * - 先把增量 hash 改名再处理，处理期间新的增量写入新的 hash
+ * - 每批写库成功后立即 HDEL 这一批，写库失败时只保留未写入的部分，下次继续处理，不会重复累加
+ * - 分布式锁保证只有一个节点在处理
+ */
+@Slf4j
+@Component
+public class CounterDeltaFlusher {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * @param deltaKey  增量 hash 的 key
+     * @param batchSize 每批写库的条数
+     * @param writer    写库逻辑，参数为 id -> 增量
+     */
+    public void flush(String deltaKey, int batchSize, Consumer<Map<Long, Long>> writer) {
+        SimpleRedisLock lock = new SimpleRedisLock(deltaKey + ":flush", stringRedisTemplate);
+        if (!lock.tryLock(60)) {
+            // 其它节点正在处理
+            return;
+        }
+        try {
+            String flushKey = deltaKey + ":flushing";
+            if (BooleanUtil.isFalse(stringRedisTemplate.hasKey(flushKey))) {
+                if (BooleanUtil.isFalse(stringRedisTemplate.hasKey(deltaKey))) {
+                    return;
+                }
+                stringRedisTemplate.rename(deltaKey, flushKey);
+            }
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(flushKey);
+            Map<Long, Long> deltas = new HashMap<>(batchSize);
+            List<Object> fields = new ArrayList<>(batchSize);
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                fields.add(entry.getKey());
+                long delta = Long.parseLong(entry.getValue().toString());
+                if (delta != 0) {
+                    deltas.put(Long.valueOf(entry.getKey().toString()), delta);
+                }
+                if (fields.size() >= batchSize) {
+                    flushBatch(flushKey, deltas, fields, writer);
+                }
+            }
+            if (!fields.isEmpty()) {
+                flushBatch(flushKey, deltas, fields, writer);
+            }
+            stringRedisTemplate.delete(flushKey);
+            log.debug("计数增量写回完成：{}，条数：{}", deltaKey, entries.size());
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    private void flushBatch(String flushKey, Map<Long, Long> deltas, List<Object> fields,
+                            Consumer<Map<Long, Long>> writer) {
+        if (!deltas.isEmpty()) {
+            writer.accept(deltas);
+        }
+        stringRedisTemplate.opsForHash().delete(flushKey, fields.toArray());
+        deltas.clear();
+        fields.clear();
+    }
+}
@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 接口限流，滑动窗口内最多允许 max 次请求，超过时直接返回失败，不执行方法
+ * - 可以重复标注，按多个维度、多个窗口同时限流
+ * <pre>
+ * &#64;RateLimit(key = "#phone", window = 60, max = 1)
+ * &#64;RateLimit(window = 3600, max = 50)
+ * </pre>
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(RateLimits.class)
+public @interface RateLimit {
+
+    /**
+     * 限流维度，取方法参数的 SpEL 表达式，如 #phone、#loginForm?.phone
+     * 为空时按客户端 ip 限流；表达式结果为空时不限流
+     */
+    String key() default "";
+
+    /**
+     * 窗口长度，单位秒
+     */
+    long window() default 60;
+
+    /**
+     * 窗口内允许的请求数
+     */
+    int max() default 10;
+
+    /**
+     * 被限流时返回的提示
+     */
+    String message() default "操作太频繁，请稍后再试！";
+}
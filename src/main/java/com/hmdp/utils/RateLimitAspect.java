@@ -0,0 +1,163 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.Result;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * {@link RateLimit} 的切面
+ * - 滑动窗口计数在 Redis 中由 lua 脚本原子完成，多个节点共享同一个窗口
+ * - 同一方法上的多个限流一起判断，全部通过才计数，被后面的限流拒绝的请求不会占用前面限流的名额
+ * - 被限流的 key 在本地记录解除时间，解除前的请求直接拒绝，不再访问 Redis
+ * <p>
+ * key：limit:{方法名}:{窗口秒数}:{维度值 | ip:{ip}}
+ */
+@Slf4j
+@Aspect
+@Component
+public class RateLimitAspect {
+
+    private static final DefaultRedisScript<List> RATE_LIMIT_SCRIPT;
+
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(List.class);
+    }
+
+    private static final ExpressionParser PARSER = new SpelExpressionParser();
+    private static final ParameterNameDiscoverer NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+    // zset 成员前缀，同一毫秒内的多次请求也不会重复
+    private static final String MEMBER_PREFIX = UUID.randomUUID().toString(true) + '-';
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // SpEL 表达式 -> 解析结果
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    // 被限流的 key -> 解除限流的时间戳，过期后自动移除
+    private final LRUCache<String, Long> blockedCache = CacheUtil.newLRUCache(100000);
+
+    @Around("@annotation(com.hmdp.utils.RateLimit) || @annotation(com.hmdp.utils.RateLimits)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        List<RateLimit> limits = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (RateLimit limit : method.getAnnotationsByType(RateLimit.class)) {
+            String key = limitKey(limit, method, joinPoint.getArgs());
+            if (key != null) {
+                limits.add(limit);
+                keys.add(key);
+            }
+        }
+        RateLimit rejected = tryAcquire(keys, limits);
+        if (rejected != null) {
+            return Result.fail(rejected.message());
+        }
+        return joinPoint.proceed();
+    }
+
+    /**
+     * 尝试通过全部限流，返回拒绝本次请求的限流，全部通过返回 null
+     */
+    private RateLimit tryAcquire(List<String> keys, List<RateLimit> limits) {
+        if (keys.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        // 1 本地预检：任一维度仍在限流中直接拒绝
+        for (int i = 0; i < keys.size(); i++) {
+            Long until = blockedCache.get(keys.get(i), false);
+            if (until != null && until > now) {
+                log.debug("请求被限流：{}", keys.get(i));
+                return limits.get(i);
+            }
+        }
+        // 2 Redis 滑动窗口计数，返回 {拒绝的维度序号（从1开始，0为通过）, 还要等待的毫秒数}
+        List<Object> args = new ArrayList<>(2 + limits.size() * 2);
+        args.add(String.valueOf(now));
+        args.add(MEMBER_PREFIX + sequence.incrementAndGet());
+        for (RateLimit limit : limits) {
+            args.add(String.valueOf(TimeUnit.SECONDS.toMillis(limit.window())));
+            args.add(String.valueOf(limit.max()));
+        }
+        List<?> result = stringRedisTemplate.execute(RATE_LIMIT_SCRIPT, keys, args.toArray());
+        if (result == null || result.size() < 2) {
+            return null;
+        }
+        int index = ((Long) result.get(0)).intValue();
+        long wait = (Long) result.get(1);
+        if (index <= 0 || wait <= 0) {
+            return null;
+        }
+        // 3 记录解除时间，等待期间不再访问 Redis
+        String key = keys.get(index - 1);
+        blockedCache.put(key, now + wait, wait);
+        log.debug("请求被限流：{}", key);
+        return limits.get(index - 1);
+    }
+
+    /**
+     * 生成限流 key，维度值为空时返回 null，不限流
+     */
+    private String limitKey(RateLimit limit, Method method, Object[] args) {
+        String value;
+        if (StrUtil.isBlank(limit.key())) {
+            String ip = clientIp();
+            value = ip == null ? null : "ip:" + ip;
+        } else {
+            Expression expression = expressions.computeIfAbsent(limit.key(), PARSER::parseExpression);
+            Object result = expression.getValue(new MethodBasedEvaluationContext(null, method, args, NAME_DISCOVERER));
+            value = result == null ? null : result.toString();
+        }
+        if (StrUtil.isBlank(value)) {
+            return null;
+        }
+        return RATE_LIMIT_KEY + method.getName() + ":" + limit.window() + ":" + value;
+    }
+
+    /**
+     * 客户端 ip，部署在 nginx 后时由 server.forward-headers-strategy 从 X-Forwarded-For 还原
+     */
+    private static String clientIp() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        return ((ServletRequestAttributes) attributes).getRequest().getRemoteAddr();
+    }
+}
@@ -0,0 +1,126 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * CacheClient 的响应式版本，缓存穿透、逻辑过期的处理方式与 CacheClient 一致
+ * - Redis 访问全部非阻塞
+ * - dbFallback 仍是阻塞调用，放到 boundedElastic 线程执行，不占用事件循环线程
+ */
+@Slf4j
+@Component
+public class ReactiveCacheClient {
+    @Resource
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    public Mono<Boolean> set(String key, Object value, Long time, TimeUnit unit) {
+        return reactiveStringRedisTemplate.opsForValue()
+                .set(key, JSONUtil.toJsonStr(value), Duration.ofSeconds(unit.toSeconds(time)));
+    }
+
+    public Mono<Boolean> setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        return reactiveStringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+    }
+
+    /**
+     * 利用“缓存空值”解决【缓存穿透】，不存在时返回 Mono.empty()
+     */
+    public <R, ID> Mono<R> queryWithPassThrough(
+            String keyPrefix,
+            ID id,
+            Class<R> type,
+            Function<ID, R> dbFallback,
+            Long time, TimeUnit unit) {
+
+        String key = keyPrefix + id;
+        ReactiveValueOperations<String, String> ops = reactiveStringRedisTemplate.opsForValue();
+        return ops.get(key)
+                // 命中：有值反序列化；空值""表示【缓存穿透】，用 Optional.empty 标记
+                .map(json -> Optional.ofNullable(StrUtil.isNotBlank(json) ? JSONUtil.toBean(json, type) : null))
+                // 未命中：查询 db 并写回缓存
+                .switchIfEmpty(Mono.defer(() -> blocking(() -> dbFallback.apply(id))
+                        .flatMap(r -> r.isPresent()
+                                ? set(key, r.get(), time, unit).thenReturn(r)
+                                : ops.set(key, "", Duration.ofMinutes(CACHE_NULL_TTL)).thenReturn(r))))
+                .filter(Optional::isPresent)
+                .map(Optional::get);
+    }
+
+    /**
+     * 逻辑过期解决【缓存击穿】，未命中返回 Mono.empty()
+     */
+    public <R, ID> Mono<R> queryWithLogicalExpire(
+            String keyPrefix,
+            ID id,
+            Class<R> type,
+            Function<ID, R> dbFallback,
+            Long time, TimeUnit unit) {
+
+        String key = keyPrefix + id;
+        return reactiveStringRedisTemplate.opsForValue().get(key)
+                .filter(StrUtil::isNotBlank)
+                .flatMap(json -> {
+                    RedisData redisData = JSONUtil.toBean(json, RedisData.class);
+                    R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+                    // 未过期，直接返回
+                    if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                        return Mono.just(r);
+                    }
+                    // 过期，获取到互斥锁的请求在后台重建缓存，所有请求都先返回旧数据
+                    String lockKey = LOCK_SHOP_KEY + id;
+                    return tryLock(lockKey)
+                            .doOnNext(isLock -> {
+                                if (isLock) {
+                                    rebuild(key, lockKey, id, dbFallback, time, unit);
+                                }
+                            })
+                            .thenReturn(r);
+                });
+    }
+
+    private <R, ID> void rebuild(String key, String lockKey, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        blocking(() -> dbFallback.apply(id))
+                .flatMap(r -> setWithLogicalExpire(key, r.orElse(null), time, unit))
+                .doFinally(signal -> unLock(lockKey).subscribe())
+                .subscribe(
+                        ok -> log.debug("缓存重建完成，key={}", key),
+                        e -> log.error("缓存重建失败，key=" + key, e)
+                );
+    }
+
+    private <R> Mono<Optional<R>> blocking(Callable<R> callable) {
+        return Mono.fromCallable(() -> Optional.ofNullable(callable.call()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Boolean> tryLock(String key) {
+        return reactiveStringRedisTemplate.opsForValue()
+                .setIfAbsent(key, "1", Duration.ofSeconds(LOCK_SHOP_TTL))
+                .defaultIfEmpty(false);
+    }
+
+    private Mono<Long> unLock(String key) {
+        return reactiveStringRedisTemplate.delete(key);
+    }
+}
@@ -5,23 +5,70 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
+    public static final String LOGIN_ACTIVE_KEY = "login:active";
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
+    public static final String LOGIN_LOGOUT_CHANNEL = "login:logout";
 
     public static final Long CACHE_NULL_TTL = 2L;
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final Long CACHE_SHOP_TYPE_TTL = 60L;
+    public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type:";
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final Long CACHE_USER_PHONE_TTL = 7L;
+    public static final String CACHE_USER_PHONE_KEY = "cache:user-phone:";
+    public static final Long CACHE_VOUCHER_TTL = 30L;
+    public static final String CACHE_VOUCHER_KEY = "cache:voucher:shop:";
+    public static final Long CACHE_BLOG_COMMENTS_TTL = 5L;
+    public static final String CACHE_BLOG_COMMENTS_KEY = "cache:blog-comments:";
+    public static final Long CACHE_USER_BLOG_TTL = 10L;
+    public static final String CACHE_USER_BLOG_KEY = "cache:blog:user:";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
+    public static final String RATE_LIMIT_KEY = "limit:";
+
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_BUDGET_KEY = "seckill:budget:";
 
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String USER_LIKED_KEY = "user:liked:";
+    public static final String USER_LIKED_BACKFILL_KEY = "user:liked-backfilled";
+    public static final String USER_LIKED_CHANNEL = "user:liked-changed";
+    public static final String BLOG_LIKED_DELTA_KEY = "blog:liked-delta";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String BLOG_COMMENTS_DELTA_KEY = "blog:comments-delta";
 
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    public static final String FEED_BIG_V_KEY = "feed:bigv";
+    public static final String FEED_BIG_V_RETIRED_KEY = "feed:bigv-retired";
+    public static final String FEED_BIG_V_RETIRED_TIME_KEY = "feed:bigv-retired-time";
+
+    public static final String FOLLOWS_KEY = "follows:";
+    public static final String FOLLOW_FANS_KEY = "follow:fans:";
+    public static final Long FOLLOW_FANS_TTL = 1L;
 
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_SUGGEST_CHANNEL = "shop:suggest";
+
+    public static final String SHOP_RANK_SOLD_KEY = "shop:rank:sold:";
+    public static final String SHOP_RANK_SCORE_KEY = "shop:rank:score:";
+    public static final String SHOP_RANK_EMPTY_KEY = "shop:rank:empty:";
 
     public static final String USER_SIGN_KEY = "sign:";
+    public static final String USER_SIGN_STREAK_KEY = "sign-streak:";
+    public static final String USER_SIGN_MAKEUP_KEY = "sign-makeup:";
 
     public static final String UV_KEY = "uv:";
+
+    public static final String STAT_PV_KEY = "stat:pv:";
+    public static final String STAT_UV_KEY = "stat:uv:";
+    public static final String STAT_ACTIVE_KEY = "stat:active:";
+    public static final String STAT_ROLLUP_KEY = "stat:rollup:";
+    public static final Long STAT_HOUR_TTL = 3L;
+    public static final Long STAT_DAY_TTL = 90L;
+    public static final Long STAT_MONTH_TTL = 730L;
 }
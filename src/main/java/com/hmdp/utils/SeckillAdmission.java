@@ -0,0 +1,236 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntUnaryOperator;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_BUDGET_KEY;
+
+/**
+ * 秒杀接口准入控制，按从便宜到昂贵的顺序逐层判断，任一层拒绝即快速失败
+ * 1. 本节点令牌桶：每个优惠券每秒最多放行 node-qps 个请求，不访问 Redis
+ * 2. 自适应并发限制：按处理耗时调整本节点同时处理的秒杀请求数（AIMD），耗时上升时收缩
+ * 3. 全局预算：所有节点每个优惠券每秒共享 global-qps 个名额，节点每次从 Redis 领取一批，用完再领
+ * <p>
+ * key：seckill:budget:{voucherId}:{epochSecond}
+ */
+@Slf4j
+@Component
+public class SeckillAdmission {
+
+    public enum Decision {
+        ADMITTED, SHED_LOCAL, SHED_CONCURRENCY, SHED_GLOBAL
+    }
+
+    @Value("${hmdp.seckill.node-qps:500}")
+    private int nodeQps;
+
+    @Value("${hmdp.seckill.global-qps:2000}")
+    private int globalQps;
+
+    // 每次从 Redis 领取的名额数
+    @Value("${hmdp.seckill.budget-batch:20}")
+    private int budgetBatch;
+
+    @Value("${hmdp.seckill.max-concurrency:200}")
+    private int maxConcurrency;
+
+    @Value("${hmdp.seckill.min-concurrency:10}")
+    private int minConcurrency;
+
+    // 处理耗时超过该值时收缩并发上限
+    @Value("${hmdp.seckill.target-latency-ms:100}")
+    private long targetLatencyMs;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    // voucherId -> 本节点令牌桶
+    private final Map<Long, TokenBucket> buckets = new ConcurrentHashMap<>();
+    // voucherId -> 本节点领取的全局名额
+    private final Map<Long, Budget> budgets = new ConcurrentHashMap<>();
+
+    // 并发限制：当前上限（-1 为未初始化）、正在处理的请求数、上次收缩时间，多个请求线程并发更新，都用 CAS
+    private final AtomicInteger concurrencyLimit = new AtomicInteger(-1);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastDecreaseMillis = new AtomicLong();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder shedLocal = new LongAdder();
+    private final LongAdder shedConcurrency = new LongAdder();
+    private final LongAdder shedGlobal = new LongAdder();
+
+    /**
+     * 请求准入，返回 ADMITTED 时处理完成后必须调用 {@link #release(long)}
+     */
+    public Decision tryAdmit(Long voucherId) {
+        // 1 本节点令牌桶
+        if (!buckets.computeIfAbsent(voucherId, k -> new TokenBucket(nodeQps)).tryAcquire()) {
+            shedLocal.increment();
+            return Decision.SHED_LOCAL;
+        }
+        // 2 并发限制
+        if (inFlight.incrementAndGet() > limit()) {
+            inFlight.decrementAndGet();
+            shedConcurrency.increment();
+            return Decision.SHED_CONCURRENCY;
+        }
+        // 3 全局预算，Redis 异常时同样拒绝并归还并发名额，否则名额泄漏后并发上限会逐渐被占满
+        boolean acquired;
+        try {
+            acquired = budgets.computeIfAbsent(voucherId, k -> new Budget()).tryAcquire(voucherId);
+        } catch (RuntimeException e) {
+            log.warn("秒杀全局预算领取失败，拒绝请求，voucherId：{}", voucherId, e);
+            acquired = false;
+        }
+        if (!acquired) {
+            inFlight.decrementAndGet();
+            shedGlobal.increment();
+            return Decision.SHED_GLOBAL;
+        }
+        admitted.increment();
+        return Decision.ADMITTED;
+    }
+
+    /**
+     * 请求处理完成，按耗时调整并发上限
+     * - 超过目标耗时：乘性收缩为 0.9 倍，每 100ms 最多收缩一次，避免同一批慢请求连续收缩
+     * - 未超过且并发已接近上限：加性增加 1
+     */
+    public void release(long latencyMillis) {
+        int current = inFlight.getAndDecrement();
+        if (latencyMillis > targetLatencyMs) {
+            long now = System.currentTimeMillis();
+            long last = lastDecreaseMillis.get();
+            // 只有抢到本次收缩的线程才收缩
+            if (now - last >= 100 && lastDecreaseMillis.compareAndSet(last, now)) {
+                updateLimit(limit -> Math.max(minConcurrency, (int) (limit * 0.9)));
+            }
+        } else {
+            updateLimit(limit -> current >= limit - 1 && limit < maxConcurrency ? limit + 1 : limit);
+        }
+    }
+
+    /**
+     * CAS 更新并发上限，并发的收缩和增加不会互相覆盖
+     */
+    private void updateLimit(IntUnaryOperator update) {
+        while (true) {
+            int limit = limit();
+            int next = update.applyAsInt(limit);
+            if (next == limit || concurrencyLimit.compareAndSet(limit, next)) {
+                return;
+            }
+        }
+    }
+
+    private int limit() {
+        int limit = concurrencyLimit.get();
+        if (limit < 0) {
+            concurrencyLimit.compareAndSet(limit, maxConcurrency);
+            limit = concurrencyLimit.get();
+        }
+        return limit;
+    }
+
+    /**
+     * 定时输出准入统计，清理已不再访问的优惠券
+     */
+    @Scheduled(fixedRate = 60000)
+    public void logAdmissionStats() {
+        long ok = admitted.sumThenReset();
+        long local = shedLocal.sumThenReset();
+        long concurrency = shedConcurrency.sumThenReset();
+        long global = shedGlobal.sumThenReset();
+        if (ok > 0 || local > 0 || concurrency > 0 || global > 0) {
+            log.info("秒杀准入 放行：{}，拒绝：令牌桶 {}，并发 {}，全局预算 {}，当前并发上限：{}（最近一分钟）",
+                    ok, local, concurrency, global, limit());
+        }
+        long idle = System.nanoTime() - TimeUnit.MINUTES.toNanos(1);
+        buckets.values().removeIf(b -> b.lastRefillNanos < idle);
+        long second = System.currentTimeMillis() / 1000;
+        budgets.values().removeIf(b -> b.second < second - 60);
+    }
+
+    /**
+     * 本节点令牌桶，容量为一秒的令牌数
+     */
+    private static final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private volatile long lastRefillNanos;
+
+        TokenBucket(int qps) {
+            this.ratePerNano = qps / 1e9;
+            this.capacity = qps;
+            this.tokens = qps;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerNano);
+            lastRefillNanos = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+
+    /**
+     * 本节点当前秒领取的全局名额
+     */
+    private final class Budget {
+        private volatile long second;
+        private int remaining;
+        // 当前秒全局名额已领完
+        private boolean exhausted;
+
+        synchronized boolean tryAcquire(Long voucherId) {
+            long now = System.currentTimeMillis() / 1000;
+            if (now != second) {
+                second = now;
+                remaining = 0;
+                exhausted = false;
+            }
+            if (remaining > 0) {
+                remaining--;
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+            // 从 Redis 领取一批名额，领到的数量为这一批中未超出全局预算的部分
+            String key = SECKILL_BUDGET_KEY + voucherId + ":" + now;
+            Long total = stringRedisTemplate.opsForValue().increment(key, budgetBatch);
+            if (total == null) {
+                return false;
+            }
+            if (total <= budgetBatch) {
+                stringRedisTemplate.expire(key, 5, TimeUnit.SECONDS);
+            }
+            long granted = Math.min(budgetBatch, globalQps - (total - budgetBatch));
+            if (granted <= 0) {
+                exhausted = true;
+                return false;
+            }
+            remaining = (int) granted - 1;
+            exhausted = granted < budgetBatch;
+            return true;
+        }
+    }
+}
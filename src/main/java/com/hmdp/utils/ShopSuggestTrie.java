@@ -0,0 +1,140 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopSuggestDTO;
+import com.hmdp.entity.Shop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 商铺名称前缀树，用于输入联想
+ * - 构建后只读，可被多线程并发查询
+ * - 子节点用有序 char[] + 数组存储，比 HashMap 节省内存
+ * - 每个节点预先计算好 topK（按销量、评分排序），查询时只需沿前缀走到节点直接返回
+ */
+public class ShopSuggestTrie {
+
+    private static final char[] EMPTY_KEYS = new char[0];
+    private static final Node[] EMPTY_CHILDREN = new Node[0];
+    private static final int[] EMPTY_TOP = new int[0];
+
+    private final int topK;
+    private final long[] ids;
+    private final String[] names;
+    private final Node root = new Node();
+
+    private ShopSuggestTrie(List<Shop> shops, int topK) {
+        this.topK = topK;
+        // 按排名排序后，下标越小排名越靠前，节点的 topK 只需存下标
+        List<Shop> sorted = new ArrayList<>(shops);
+        sorted.sort(RANK_ORDER);
+        this.ids = new long[sorted.size()];
+        this.names = new String[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            Shop shop = sorted.get(i);
+            ids[i] = shop.getId();
+            names[i] = shop.getName();
+            insert(normalize(shop.getName()), i);
+        }
+    }
+
+    /**
+     * 销量降序，评分降序，id升序
+     */
+    private static final Comparator<Shop> RANK_ORDER = Comparator
+            .comparing((Shop s) -> s.getSold() == null ? 0 : s.getSold(), Comparator.reverseOrder())
+            .thenComparing(s -> s.getScore() == null ? 0 : s.getScore(), Comparator.reverseOrder())
+            .thenComparing(Shop::getId);
+
+    public static ShopSuggestTrie build(List<Shop> shops, int topK) {
+        return new ShopSuggestTrie(shops, topK);
+    }
+
+    /**
+     * 查询前缀对应的 topK 商铺
+     *
+     * @param prefix 用户输入的前缀
+     * @param limit  返回条数，不超过构建时的 topK
+     */
+    public List<ShopSuggestDTO> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        int n = Math.min(limit, node.top.length);
+        List<ShopSuggestDTO> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int idx = node.top[i];
+            list.add(new ShopSuggestDTO(ids[idx], names[idx]));
+        }
+        return list;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    private void insert(String key, int idx) {
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+            // 按排名顺序插入，前 topK 个到达该节点的就是该节点的 topK
+            node.offer(idx, topK);
+        }
+    }
+
+    private static String normalize(String s) {
+        return s == null ? "" : s.trim().toLowerCase();
+    }
+
+    private static final class Node {
+        private char[] keys = EMPTY_KEYS;
+        private Node[] children = EMPTY_CHILDREN;
+        private int[] top = EMPTY_TOP;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            // 插入到有序位置
+            int pos = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            System.arraycopy(keys, pos, newKeys, pos + 1, keys.length - pos);
+            System.arraycopy(children, pos, newChildren, pos + 1, children.length - pos);
+            Node node = new Node();
+            newKeys[pos] = c;
+            newChildren[pos] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+
+        void offer(int idx, int topK) {
+            if (top.length >= topK) {
+                return;
+            }
+            int[] newTop = Arrays.copyOf(top, top.length + 1);
+            newTop[top.length] = idx;
+            top = newTop;
+        }
+    }
+}
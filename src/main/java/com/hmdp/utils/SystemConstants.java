@@ -5,4 +5,18 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    public static final int SHOP_SUGGEST_TOP_K = 10;
+    public static final int FEED_PAGE_SIZE = 2;
+    public static final int FEED_BIG_V_FANS = 10000;
+    public static final int FEED_PUSH_BATCH_SIZE = 1000;
+    public static final int FEED_BOX_MAX_SIZE = 1000;
+    public static final int FEED_ACTIVE_DAYS = 30;
+    public static final int LIKED_FLUSH_BATCH_SIZE = 500;
+    public static final int LIKED_TOP_SIZE = 50;
+    public static final long BLOG_HOT_PAGE_CACHE_MILLIS = 3000L;
+    public static final int BLOG_HOT_MAX_SIZE = 10000;
+    public static final int COMMENTS_PAGE_SIZE = 10;
+    public static final int COMMENTS_FLUSH_BATCH_SIZE = 500;
+    public static final int SIGN_MAKEUP_DAYS = 7;
+    public static final int SIGN_MAKEUP_MAX_PER_MONTH = 3;
 }
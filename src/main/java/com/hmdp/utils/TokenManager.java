@@ -0,0 +1,331 @@
+package com.hmdp.utils;
+
+import cn.hutool.bloomfilter.BitMapBloomFilter;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.HMac;
+import cn.hutool.crypto.digest.HmacAlgorithm;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 登录 token 的签发、解析、吊销
+ * - 默认：随机 token，用户信息保存在 Redis hash login:token:{token}
+ * - hmdp.token.stateless=true：token 为 payload.签名，payload 携带 UserDTO，本地 HMAC 校验，不访问 Redis
+ *   吊销的 token（jti）保存在 Redis，本地用布隆过滤器预判，命中时才查 Redis 确认
+ */
+@Slf4j
+@Component
+public class TokenManager {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.token.stateless:false}")
+    private boolean stateless;
+
+    @Value("${hmdp.token.secret:}")
+    private String secret;
+
+    // 距上次签发超过该时间才续期，避免每个请求都重新签发
+    @Value("${hmdp.token.renew-interval-minutes:60}")
+    private long renewIntervalMinutes;
+
+    // Redis token 的 TTL 刷新间隔，为 0 时每个请求都刷新
+    @Value("${hmdp.token.refresh-interval-minutes:30}")
+    private long refreshIntervalMinutes;
+
+    private HMac hmac;
+
+    // 已吊销 jti 的本地布隆过滤器，定时从 Redis 重建
+    // 参数为占用的MB数，hutool 按 (m/5) MB 给5个哈希函数各分配一个位图，小于5时位图大小为0
+    private static final int REVOKED_FILTER_MB = 5;
+    private volatile BitMapBloomFilter revokedFilter = new BitMapBloomFilter(REVOKED_FILTER_MB);
+    // 上次重建时吊销集合的 hashCode，未变化时不重建
+    private Integer revokedHash;
+
+    // jti -> 续期后的新 token，同一 token 的并发请求复用同一个新 token
+    private final LRUCache<String, String> renewedTokens = CacheUtil.newLRUCache(10000, 60 * 1000L);
+
+    // 本节点最近刷新过 TTL 的 token，过期时间即刷新间隔
+    private LRUCache<String, Boolean> refreshedTokens;
+
+    // token -> 用户信息本地缓存，过期时间短，登出时通过发布订阅通知所有节点删除
+    private final LRUCache<String, UserDTO> sessionCache = CacheUtil.newLRUCache(100000, 60 * 1000L);
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private ActiveUserRecorder activeUserRecorder;
+
+    // 鉴权产生的 Redis 读写次数
+    private final LongAdder authReads = new LongAdder();
+    private final LongAdder authWrites = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        refreshedTokens = CacheUtil.newLRUCache(100000, TimeUnit.MINUTES.toMillis(refreshIntervalMinutes));
+        // 订阅登出消息，删除本地缓存
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> onLogout(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(LOGIN_LOGOUT_CHANNEL));
+        if (!stateless) {
+            return;
+        }
+        if (StrUtil.isBlank(secret)) {
+            throw new IllegalStateException("hmdp.token.stateless=true 时必须配置 hmdp.token.secret");
+        }
+        hmac = new HMac(HmacAlgorithm.HmacSHA256, secret.getBytes(StandardCharsets.UTF_8));
+        reloadRevoked();
+    }
+
+    /**
+     * 登录成功后签发 token
+     */
+    public String createToken(UserDTO userDTO) {
+        if (stateless) {
+            long now = System.currentTimeMillis();
+            return sign(userDTO, UUID.randomUUID().toString(true), now);
+        }
+        // 保存用户信息到Redis，key=token, value=userMap
+        String token = UUID.randomUUID().toString();
+        String tokenKey = LOGIN_USER_KEY + token;
+        // userDTO的id是Long类型，String序列化会报错
+        Map<String, Object> userMap = BeanUtil.beanToMap(
+                userDTO,
+                new HashMap<>(),
+                CopyOptions.create()
+                        .setIgnoreNullValue(true)
+                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString())
+        );
+        stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
+        stringRedisTemplate.expire(tokenKey, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        refreshedTokens.put(token, Boolean.TRUE);
+        authWrites.add(2);
+        return token;
+    }
+
+    /**
+     * 解析 token，无效或过期返回 null
+     */
+    public Session resolve(String token) {
+        Session session = stateless ? resolveSigned(token) : resolveStored(token);
+        if (session != null) {
+            // 记录活跃时间，feed 推送只推给活跃用户
+            activeUserRecorder.touch(session.getUser().getId());
+        }
+        return session;
+    }
+
+    /**
+     * 吊销 token（登出），并广播给所有节点删除本地缓存
+     */
+    public void revoke(String token) {
+        if (!stateless) {
+            stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        } else {
+            JSONObject claims = verify(token);
+            if (claims == null) {
+                return;
+            }
+            String jti = claims.getStr("jti");
+            stringRedisTemplate.opsForZSet().add(LOGIN_REVOKED_KEY, jti, claims.getLong("exp"));
+            revokedFilter.add(jti);
+        }
+        onLogout(token);
+        stringRedisTemplate.convertAndSend(LOGIN_LOGOUT_CHANNEL, token);
+    }
+
+    /**
+     * 收到登出消息：删除本地缓存；签名 token 立即加入本地吊销过滤器，不必等定时重建
+     */
+    private void onLogout(String token) {
+        sessionCache.remove(token);
+        refreshedTokens.remove(token);
+        if (stateless) {
+            JSONObject claims = verify(token);
+            if (claims != null) {
+                revokedFilter.add(claims.getStr("jti"));
+            }
+        }
+    }
+
+    /**
+     * 定时从 Redis 重建吊销过滤器，同步其它节点的登出；顺带清理已自然过期的 jti
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void reloadRevoked() {
+        if (!stateless) {
+            return;
+        }
+        stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, 0, System.currentTimeMillis());
+        Set<String> jtis = stringRedisTemplate.opsForZSet().range(LOGIN_REVOKED_KEY, 0, -1);
+        int hash = jtis == null ? 0 : jtis.hashCode();
+        if (revokedHash != null && revokedHash == hash) {
+            return;
+        }
+        BitMapBloomFilter filter = new BitMapBloomFilter(REVOKED_FILTER_MB);
+        if (jtis != null) {
+            jtis.forEach(filter::add);
+        }
+        revokedFilter = filter;
+        revokedHash = hash;
+    }
+
+    /**
+     * 从 Redis 读取用户信息，按需刷新 TTL
+     * - 本地缓存命中且无需刷新 TTL 时，不访问 Redis，也不做反射拷贝
+     * - 本节点在 refresh-interval 内刷新过的 token 不再 EXPIRE（TTL 远大于刷新间隔，剩余时间足够）
+     * - 需要刷新时 HGETALL 和 EXPIRE 放在同一个 pipeline 中，一次网络往返
+     */
+    private Session resolveStored(String token) {
+        String key = LOGIN_USER_KEY + token;
+        boolean refresh = refreshIntervalMinutes <= 0 || !refreshedTokens.containsKey(token);
+        UserDTO cached = sessionCache.get(token, false);
+        if (cached != null && !refresh) {
+            return new Session(cached, null);
+        }
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hGetAll(key);
+            if (refresh) {
+                conn.expire(key, TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL));
+            }
+            return null;
+        });
+        authReads.increment();
+        @SuppressWarnings("unchecked")
+        Map<String, String> userMap = (Map<String, String>) results.get(0);
+        if (userMap == null || userMap.isEmpty()) {
+            // 过期 或 假token
+            return null;
+        }
+        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+        sessionCache.put(token, userDTO);
+        if (refresh) {
+            refreshedTokens.put(token, Boolean.TRUE);
+            authWrites.increment();
+        }
+        return new Session(userDTO, null);
+    }
+
+    /**
+     * 定时输出鉴权产生的 Redis 读写次数，用于对比刷新节流前后的写流量
+     */
+    @Scheduled(fixedRate = 60000)
+    public void logAuthStats() {
+        long reads = authReads.sumThenReset();
+        long writes = authWrites.sumThenReset();
+        if (reads > 0 || writes > 0) {
+            log.info("鉴权 Redis 读：{}，写：{}（最近一分钟）", reads, writes);
+        }
+    }
+
+    private Session resolveSigned(String token) {
+        // 1 校验签名和有效期
+        JSONObject claims = verify(token);
+        if (claims == null) {
+            return null;
+        }
+        // 2 是否已吊销：布隆过滤器判断不存在则一定未吊销，存在时查 Redis 确认
+        String jti = claims.getStr("jti");
+        if (revokedFilter.contains(jti)
+                && stringRedisTemplate.opsForZSet().score(LOGIN_REVOKED_KEY, jti) != null) {
+            return null;
+        }
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(claims.getLong("id"));
+        userDTO.setNickName(claims.getStr("nickName"));
+        userDTO.setIcon(claims.getStr("icon"));
+        // 3 滑动续期：签发超过续期间隔才重新签发，同一 jti 一分钟内只签发一次
+        long now = System.currentTimeMillis();
+        String renewed = null;
+        if (now - claims.getLong("iat") > TimeUnit.MINUTES.toMillis(renewIntervalMinutes)) {
+            renewed = renewedTokens.get(jti, () -> sign(userDTO, jti, now));
+        }
+        return new Session(userDTO, renewed);
+    }
+
+    /**
+     * token = base64url(payload) + "." + base64url(HMAC-SHA256(payload))
+     */
+    private String sign(UserDTO userDTO, String jti, long now) {
+        JSONObject claims = JSONUtil.createObj()
+                .set("id", userDTO.getId())
+                .set("nickName", userDTO.getNickName())
+                .set("icon", userDTO.getIcon())
+                .set("jti", jti)
+                .set("iat", now)
+                .set("exp", now + TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL));
+        String payload = Base64.encodeUrlSafe(claims.toString());
+        return payload + "." + Base64.encodeUrlSafe(hmac.digest(payload));
+    }
+
+    /**
+     * 校验签名和有效期，通过返回 payload
+     */
+    private JSONObject verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        byte[] expected = hmac.digest(payload);
+        byte[] actual;
+        try {
+            actual = Base64.decode(token.substring(dot + 1));
+        } catch (Exception e) {
+            return null;
+        }
+        // 常量时间比较，避免时序攻击
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return null;
+        }
+        JSONObject claims = JSONUtil.parseObj(Base64.decodeStr(payload));
+        if (claims.getLong("exp") < System.currentTimeMillis()) {
+            return null;
+        }
+        return claims;
+    }
+
+    /**
+     * 解析结果：当前用户，以及续期后的新 token（无需续期时为 null）
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Session {
+        private UserDTO user;
+        private String renewedToken;
+    }
+}
@@ -0,0 +1,149 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 全站 UV 统计（HyperLogLog）
+ * - 请求线程只做本地去重和入队，不访问 Redis
+ * - 定时任务每 300ms 把新出现的用户批量 PFADD 到 uv:{yyyyMMdd}
+ * - 周、月 UV 由日 key PFMERGE 汇总
+ */
+@Component
+public class UvRecorder {
+
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+    // 本地去重集合上限，超过后不再去重，直接交给 HyperLogLog
+    private static final int SEEN_MAX_SIZE = 1_000_000;
+    private static final int PFADD_BATCH_SIZE = 1000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private volatile Day day = new Day(LocalDate.now());
+
+    // 待写入 Redis 的 key -> userId
+    private final ConcurrentLinkedQueue<String[]> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 记录用户访问，当天本节点已记录过的用户直接返回
+     */
+    public void record(Long userId) {
+        Day d = currentDay();
+        if (d.seen.size() < SEEN_MAX_SIZE && !d.seen.add(userId)) {
+            return;
+        }
+        pending.offer(new String[]{d.key, userId.toString()});
+    }
+
+    /**
+     * 批量写入 Redis，同一个 key 的用户合并为一条 PFADD，所有命令一个 pipeline
+     */
+    @Scheduled(fixedDelay = 300)
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> batches = new HashMap<>();
+        String[] entry;
+        while ((entry = pending.poll()) != null) {
+            batches.computeIfAbsent(entry[0], k -> new ArrayList<>()).add(entry[1]);
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            batches.forEach((key, users) -> {
+                for (int i = 0; i < users.size(); i += PFADD_BATCH_SIZE) {
+                    List<String> batch = users.subList(i, Math.min(i + PFADD_BATCH_SIZE, users.size()));
+                    conn.pfAdd(key, batch.toArray(new String[0]));
+                }
+            });
+            return null;
+        });
+    }
+
+    /**
+     * 查询某天的 UV
+     */
+    public long countOfDay(LocalDate date) {
+        return stringRedisTemplate.opsForHyperLogLog().size(UV_KEY + date.format(DAY_FORMATTER));
+    }
+
+    /**
+     * 查询 date 所在周（周一开始）的 UV
+     */
+    public long countOfWeek(LocalDate date) {
+        LocalDate monday = date.with(DayOfWeek.MONDAY);
+        return countOfRange(UV_KEY + "week:" + monday.format(DAY_FORMATTER), monday, monday.plusDays(6));
+    }
+
+    /**
+     * 查询某月的 UV
+     */
+    public long countOfMonth(YearMonth month) {
+        return countOfRange(UV_KEY + "month:" + month.format(MONTH_FORMATTER), month.atDay(1), month.atEndOfMonth());
+    }
+
+    /**
+     * PFMERGE 汇总 [start, end] 的日 key 后 PFCOUNT
+     * - 已结束的周期汇总一次后直接读取；未结束的周期每次重新汇总
+     */
+    private long countOfRange(String rollupKey, LocalDate start, LocalDate end) {
+        boolean closed = end.isBefore(LocalDate.now());
+        if (!closed || Boolean.FALSE.equals(stringRedisTemplate.hasKey(rollupKey))) {
+            List<String> dayKeys = new ArrayList<>();
+            for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
+                dayKeys.add(UV_KEY + d.format(DAY_FORMATTER));
+            }
+            stringRedisTemplate.opsForHyperLogLog().union(rollupKey, dayKeys.toArray(new String[0]));
+        }
+        return stringRedisTemplate.opsForHyperLogLog().size(rollupKey);
+    }
+
+    /**
+     * 当天的 key 和去重集合，跨天时切换，不必每次请求都格式化日期
+     */
+    private Day currentDay() {
+        Day d = day;
+        if (System.currentTimeMillis() >= d.endMillis) {
+            synchronized (this) {
+                d = day;
+                if (System.currentTimeMillis() >= d.endMillis) {
+                    d = new Day(LocalDate.now());
+                    day = d;
+                }
+            }
+        }
+        return d;
+    }
+
+    private static final class Day {
+        private final String key;
+        private final long endMillis;
+        private final Set<Long> seen = ConcurrentHashMap.newKeySet();
+
+        Day(LocalDate date) {
+            this.key = UV_KEY + date.format(DAY_FORMATTER);
+            this.endMillis = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+}
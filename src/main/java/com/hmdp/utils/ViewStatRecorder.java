@@ -0,0 +1,335 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.dto.ViewStatDTO;
+import com.hmdp.dto.ViewStatsDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 商铺、blog 的 UV/PV 统计
+ * - 请求线程只写本地缓冲区，不访问 Redis
+ * - 每秒把缓冲区批量写入小时 key：PV 用 INCRBY，UV 用 PFADD
+ * - 每小时把上一小时 PFMERGE 汇总到天，每天把前一天汇总到月
+ * <p>
+ * key：stat:pv|uv:{type}:{id}:{yyyyMMddHH | yyyyMMdd | yyyyMM}
+ */
+@Slf4j
+@Component
+public class ViewStatRecorder {
+
+    public static final String TYPE_SHOP = "shop";
+    public static final String TYPE_BLOG = "blog";
+
+    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHH");
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+    // 查询的时间段个数上限
+    private static final int MAX_POINTS = 100;
+    // 汇总时往前检查的时间段个数，之前失败的时间段在此范围内重试
+    private static final int ROLLUP_RETRY_PERIODS = 3;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private volatile Hour hour = new Hour(LocalDateTime.now());
+
+    // 当前写入的缓冲区，以及上一轮换下来、等待写入 Redis 的缓冲区
+    private volatile Buffer buffer = new Buffer();
+    private Buffer retired;
+    private final Object flushLock = new Object();
+
+    /**
+     * 访客标识：登录用户为用户id，未登录为 ip
+     * - 部署在 nginx 后时由 server.forward-headers-strategy 从 X-Forwarded-For 还原客户端 ip
+     */
+    public static String visitorOf(HttpServletRequest request) {
+        UserDTO user = UserHolder.getUser();
+        return user != null ? user.getId().toString() : "ip:" + request.getRemoteAddr();
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param type     shop / blog
+     * @param id       商铺或blog的id
+     * @param visitor  访客标识
+     */
+    public void record(String type, Long id, String visitor) {
+        String target = type + ":" + id + ":" + currentHour().suffix;
+        Buffer b = buffer;
+        b.pv.computeIfAbsent(target, k -> new LongAdder()).increment();
+        b.uv.computeIfAbsent(target, k -> ConcurrentHashMap.newKeySet()).add(visitor);
+    }
+
+    /**
+     * 换下当前缓冲区，写入上一轮换下的缓冲区
+     * - 延后一轮写入，保证换下时仍在写旧缓冲区的请求线程已经写完
+     * - 写入失败时把数据合并回当前缓冲区，下一轮重试
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void flush() {
+        synchronized (flushLock) {
+            Buffer old = retired;
+            retired = buffer;
+            buffer = new Buffer();
+            if (old == null || old.pv.isEmpty()) {
+                return;
+            }
+            try {
+                write(old);
+            } catch (Exception e) {
+                log.warn("访问统计写入失败，下一轮重试", e);
+                Buffer current = buffer;
+                old.pv.forEach((target, pv) -> current.pv.computeIfAbsent(target, k -> new LongAdder()).add(pv.sum()));
+                old.uv.forEach((target, visitors) -> current.uv.computeIfAbsent(target, k -> ConcurrentHashMap.newKeySet()).addAll(visitors));
+            }
+        }
+    }
+
+    /**
+     * 停机前写入缓冲区中的全部数据
+     */
+    @PreDestroy
+    public void shutdown() {
+        // 第一次写入上一轮换下的缓冲区并换下当前缓冲区，第二次写入当前缓冲区
+        flush();
+        flush();
+    }
+
+    private void write(Buffer old) {
+        long hourTtl = TimeUnit.DAYS.toSeconds(STAT_HOUR_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Map.Entry<String, LongAdder> entry : old.pv.entrySet()) {
+                String target = entry.getKey();
+                int i = target.lastIndexOf(':');
+                String activeKey = STAT_ACTIVE_KEY + target.substring(i + 1);
+                conn.incrBy(STAT_PV_KEY + target, entry.getValue().sum());
+                conn.expire(STAT_PV_KEY + target, hourTtl);
+                Set<String> visitors = old.uv.get(target);
+                if (visitors != null && !visitors.isEmpty()) {
+                    conn.pfAdd(STAT_UV_KEY + target, visitors.toArray(new String[0]));
+                    conn.expire(STAT_UV_KEY + target, hourTtl);
+                }
+                // 记录这个小时有访问的对象，汇总时只处理这些对象
+                conn.sAdd(activeKey, target.substring(0, i));
+                conn.expire(activeKey, hourTtl);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 每小时汇总上一小时到天，之前汇总失败的小时一并重试
+     */
+    @Scheduled(cron = "0 5 * * * ?")
+    public void rollupLastHour() {
+        LocalDateTime now = LocalDateTime.now();
+        List<String> hours = new ArrayList<>(ROLLUP_RETRY_PERIODS);
+        for (int i = ROLLUP_RETRY_PERIODS; i >= 1; i--) {
+            hours.add(now.minusHours(i).format(HOUR_FORMATTER));
+        }
+        rollup(hours, 8, STAT_DAY_TTL);
+    }
+
+    /**
+     * 每天汇总前一天到月，之前汇总失败的天一并重试
+     */
+    @Scheduled(cron = "0 15 0 * * ?")
+    public void rollupYesterday() {
+        LocalDate today = LocalDate.now();
+        List<String> days = new ArrayList<>(ROLLUP_RETRY_PERIODS);
+        for (int i = ROLLUP_RETRY_PERIODS; i >= 1; i--) {
+            days.add(today.minusDays(i).format(DAY_FORMATTER));
+        }
+        rollup(days, 6, STAT_MONTH_TTL);
+    }
+
+    /**
+     * 依次汇总多个时间段，没有完成标记的时间段才处理，某个时间段失败不影响其它时间段，下次继续重试
+     * - 分布式锁保证只有一个节点执行
+     *
+     * @param toLength 汇总目标时间段的长度，如小时 yyyyMMddHH 汇总到天取前8位
+     */
+    private void rollup(List<String> froms, int toLength, long ttlDays) {
+        SimpleRedisLock lock = new SimpleRedisLock("stat:rollup", stringRedisTemplate);
+        if (!lock.tryLock(300)) {
+            return;
+        }
+        try {
+            for (String from : froms) {
+                try {
+                    rollup(from, from.substring(0, toLength), ttlDays);
+                } catch (Exception e) {
+                    log.warn("访问统计汇总失败，下次重试：{}", from, e);
+                }
+            }
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    /**
+     * 把 from 时间段的统计汇总到 to 时间段：UV 用 PFMERGE，PV 累加
+     * - 完成标记保证 PV 不会重复累加
+     */
+    private void rollup(String from, String to, long ttlDays) {
+        String doneKey = STAT_ROLLUP_KEY + from;
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(doneKey))) {
+            return;
+        }
+        Set<String> targets = stringRedisTemplate.opsForSet().members(STAT_ACTIVE_KEY + from);
+        if (targets != null && !targets.isEmpty()) {
+            // 1 批量读取 PV
+            List<String> targetList = new ArrayList<>(targets);
+            List<Object> pvs = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String target : targetList) {
+                    conn.get(STAT_PV_KEY + target + ":" + from);
+                }
+                return null;
+            });
+            // 2 批量汇总，放在一个事务中全部生效或全部不生效，失败重试时 PV 不会重复累加
+            long ttl = TimeUnit.DAYS.toSeconds(ttlDays);
+            String activeKey = STAT_ACTIVE_KEY + to;
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.multi();
+                for (int i = 0; i < targetList.size(); i++) {
+                    String target = targetList.get(i);
+                    String uvKey = STAT_UV_KEY + target + ":" + to;
+                    String pvKey = STAT_PV_KEY + target + ":" + to;
+                    conn.pfMerge(uvKey, uvKey, STAT_UV_KEY + target + ":" + from);
+                    conn.expire(uvKey, ttl);
+                    Object pv = pvs.get(i);
+                    if (pv != null) {
+                        conn.incrBy(pvKey, Long.parseLong(pv.toString()));
+                        conn.expire(pvKey, ttl);
+                    }
+                    conn.sAdd(activeKey, target);
+                }
+                conn.expire(activeKey, ttl);
+                conn.exec();
+                return null;
+            });
+        }
+        stringRedisTemplate.opsForValue().set(doneKey, "1", STAT_MONTH_TTL, TimeUnit.DAYS);
+        log.debug("访问统计汇总完成：{} -> {}，对象数：{}", from, to, targets == null ? 0 : targets.size());
+    }
+
+    /**
+     * 查询时间范围内每个时间段的 UV/PV，以及整个范围去重后的 UV
+     *
+     * @param granularity hour / day / month
+     */
+    public ViewStatsDTO query(String type, Long id, String granularity, LocalDateTime start, LocalDateTime end) {
+        // 1 按粒度生成时间段
+        DateTimeFormatter formatter;
+        ChronoUnit unit;
+        switch (granularity) {
+            case "hour":
+                formatter = HOUR_FORMATTER;
+                unit = ChronoUnit.HOURS;
+                break;
+            case "day":
+                formatter = DAY_FORMATTER;
+                unit = ChronoUnit.DAYS;
+                break;
+            case "month":
+                formatter = MONTH_FORMATTER;
+                unit = ChronoUnit.MONTHS;
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的统计粒度：" + granularity);
+        }
+        List<String> times = new ArrayList<>();
+        for (LocalDateTime t = start; !t.isAfter(end) && times.size() < MAX_POINTS; t = t.plus(1, unit)) {
+            times.add(t.format(formatter));
+        }
+        // 2 批量查询每个时间段的 PV、UV
+        String prefix = type + ":" + id + ":";
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String time : times) {
+                conn.get(STAT_PV_KEY + prefix + time);
+                conn.pfCount(STAT_UV_KEY + prefix + time);
+            }
+            return null;
+        });
+        // 3 封装
+        List<ViewStatDTO> points = new ArrayList<>(times.size());
+        long totalPv = 0;
+        String[] uvKeys = new String[times.size()];
+        for (int i = 0; i < times.size(); i++) {
+            Object pv = results.get(2 * i);
+            long pvCount = pv == null ? 0 : Long.parseLong(pv.toString());
+            totalPv += pvCount;
+            points.add(new ViewStatDTO(times.get(i), (Long) results.get(2 * i + 1), pvCount));
+            uvKeys[i] = STAT_UV_KEY + prefix + times.get(i);
+        }
+        ViewStatsDTO stats = new ViewStatsDTO();
+        stats.setPoints(points);
+        stats.setPv(totalPv);
+        // PFCOUNT 多个 key 返回并集的基数
+        stats.setUv(uvKeys.length == 0 ? 0L : stringRedisTemplate.opsForHyperLogLog().size(uvKeys));
+        return stats;
+    }
+
+    /**
+     * 当前小时的 key 后缀，跨小时时切换
+     */
+    private Hour currentHour() {
+        Hour h = hour;
+        if (System.currentTimeMillis() >= h.endMillis) {
+            synchronized (this) {
+                h = hour;
+                if (System.currentTimeMillis() >= h.endMillis) {
+                    h = new Hour(LocalDateTime.now());
+                    hour = h;
+                }
+            }
+        }
+        return h;
+    }
+
+    private static final class Hour {
+        private final String suffix;
+        private final long endMillis;
+
+        Hour(LocalDateTime now) {
+            LocalDateTime start = now.truncatedTo(ChronoUnit.HOURS);
+            this.suffix = start.format(HOUR_FORMATTER);
+            this.endMillis = start.plusHours(1).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+
+    private static final class Buffer {
+        // type:id:yyyyMMddHH -> PV
+        private final Map<String, LongAdder> pv = new ConcurrentHashMap<>();
+        // type:id:yyyyMMddHH -> 访客
+        private final Map<String, Set<String>> uv = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,5 @@
+-- 计数key存在时才累加；不存在时不创建，等下次查询从数据库重新统计
+if (redis.call('exists', KEYS[1]) == 1) then
+    return redis.call('incrby', KEYS[1], ARGV[1])
+end
+return nil
@@ -0,0 +1,42 @@
+-- 1.参数列表
+-- 1.1.最先点赞用户key（有上限的zset） blog:liked:{blogId}
+local topKey = KEYS[1]
+-- 1.2.点赞数增量key（hash，field为blogId）
+local deltaKey = KEYS[2]
+-- 1.3.热门排行榜key
+local hotKey = KEYS[3]
+-- 1.4.用户点赞过的blog集合key user:liked:{userId}
+local userLikedKey = KEYS[4]
+-- 1.5.用户id
+local userId = ARGV[1]
+-- 1.6.点赞时间戳
+local time = ARGV[2]
+-- 1.7.blogId
+local blogId = ARGV[3]
+-- 1.8.最先点赞用户的数量上限
+local topSize = tonumber(ARGV[4])
+
+-- 2.blog不在热门排行榜中，可能不存在，返回0由调用方确认
+if (redis.call('zscore', hotKey, blogId) == false) then
+    return 0
+end
+-- 3.是否已点赞：用户点赞集合；改造前的点赞只记录在 blog:liked:{blogId} 中（当时保存全部点赞用户）
+local liked = redis.call('sismember', userLikedKey, blogId) == 1
+        or redis.call('zscore', topKey, userId) ~= false
+-- 3.1.已点赞，取消点赞
+if (liked) then
+    redis.call('srem', userLikedKey, blogId)
+    redis.call('zrem', topKey, userId)
+    redis.call('hincrby', deltaKey, blogId, -1)
+    redis.call('zincrby', hotKey, -1, blogId)
+    return -1
+end
+-- 4.未点赞，点赞
+redis.call('sadd', userLikedKey, blogId)
+-- 4.1.只保留最先点赞的若干用户
+if (redis.call('zcard', topKey) < topSize) then
+    redis.call('zadd', topKey, time, userId)
+end
+redis.call('hincrby', deltaKey, blogId, 1)
+redis.call('zincrby', hotKey, 1, blogId)
+return 1
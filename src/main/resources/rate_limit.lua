@@ -0,0 +1,22 @@
+-- 滑动窗口限流，窗口内的请求记录在 zset 中，score 为请求时间
+-- 同一请求的多个限流维度一起判断：全部通过才记录本次请求，任一维度拒绝时都不记录
+-- KEYS：各维度的 key；ARGV：now, 成员, 然后每个 key 依次为 窗口毫秒数, 上限
+local now = tonumber(ARGV[1])
+local member = ARGV[2]
+
+-- 1 移除窗口外的请求，窗口内请求数已达上限时返回 {维度序号, 最早的请求移出窗口还要等待的毫秒数}
+for i, key in ipairs(KEYS) do
+    local window = tonumber(ARGV[i * 2 + 1])
+    local max = tonumber(ARGV[i * 2 + 2])
+    redis.call('zremrangebyscore', key, 0, now - window)
+    if (redis.call('zcard', key) >= max) then
+        local oldest = redis.call('zrange', key, 0, 0, 'withscores')
+        return { i, tonumber(oldest[2]) + window - now }
+    end
+end
+-- 2 全部通过，记录本次请求
+for i, key in ipairs(KEYS) do
+    redis.call('zadd', key, now, member)
+    redis.call('pexpire', key, tonumber(ARGV[i * 2 + 1]))
+end
+return { 0, 0 }
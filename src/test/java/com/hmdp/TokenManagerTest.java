@@ -0,0 +1,41 @@
+package com.hmdp;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.TokenManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.annotation.Resource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(properties = {"hmdp.token.stateless=true", "hmdp.token.secret=token-manager-test"})
+public class TokenManagerTest {
+    @Resource
+    private TokenManager tokenManager;
+
+    @Test
+    public void testRevokeThenResolveOther() {
+        String revoked = tokenManager.createToken(user(1L));
+        String other = tokenManager.createToken(user(2L));
+        // 吊销一个 token 后，其它 token 仍可正常解析
+        tokenManager.revoke(revoked);
+        assertNull(tokenManager.resolve(revoked));
+        TokenManager.Session session = tokenManager.resolve(other);
+        assertNotNull(session);
+        assertEquals(Long.valueOf(2L), session.getUser().getId());
+        // 定时重建过滤器后结果不变
+        tokenManager.reloadRevoked();
+        assertNull(tokenManager.resolve(revoked));
+        assertNotNull(tokenManager.resolve(other));
+    }
+
+    private static UserDTO user(Long id) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(id);
+        userDTO.setNickName("user_" + id);
+        return userDTO;
+    }
+}